@@ -0,0 +1,106 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.bench;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * Common state for the service benchmarks.
+ *
+ * The "cold" variant lets every service call open and close its own transaction, so each call starts
+ * with an empty persistence context.  The "warm" variant holds one transaction per measurement iteration
+ * on each of the silo transaction managers the service touches, so repeated finds are served from the
+ * persistence context; warm iterations are rolled back so they leave no rows behind.
+ */
+@State(Scope.Thread)
+public abstract class AbstractServiceBenchmark {
+
+    public static final String COLD = "cold";
+    public static final String WARM = "warm";
+
+    public static final int SEED_ROWS = 1000;
+
+    private static final AtomicLong sequence = new AtomicLong(0L);
+
+    @Param({ COLD, WARM })
+    public String persistenceContext;
+
+    protected ConfigurableApplicationContext context;
+
+    private final Deque<PlatformTransactionManager> warmManagers = new ArrayDeque<>();
+    private final Deque<TransactionStatus> warmStatuses = new ArrayDeque<>();
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        context = DbTestBenchmarkContext.get();
+        lookupServices();
+        seed();
+    }
+
+    @Setup(Level.Iteration)
+    public void beginIteration() {
+        if (WARM.equals(persistenceContext)) {
+            for (String name : transactionManagerNames()) {
+                PlatformTransactionManager tm = context.getBean(name, PlatformTransactionManager.class);
+                warmStatuses.push(tm.getTransaction(new DefaultTransactionDefinition()));
+                warmManagers.push(tm);
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        while (!warmStatuses.isEmpty()) {
+            warmManagers.pop().rollback(warmStatuses.pop());
+        }
+    }
+
+    /**
+     * Bean names of the transaction managers the benchmarked service participates in, outermost first.
+     */
+    protected abstract String[] transactionManagerNames();
+
+    protected abstract void lookupServices();
+
+    protected abstract void seed();
+
+    protected static String uniqueName(String prefix) {
+        return prefix + Long.toString(System.nanoTime() % 1000000000L, 36) + "-" + Long.toString(sequence.incrementAndGet(), 36);
+    }
+
+    protected static int randomIndex(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+}
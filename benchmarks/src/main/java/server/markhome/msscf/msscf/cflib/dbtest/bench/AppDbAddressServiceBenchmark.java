@@ -0,0 +1,104 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import server.markhome.msscf.msscf.cflib.dbtest.appdb.AppDbAddress;
+import server.markhome.msscf.msscf.cflib.dbtest.appdb.AppDbAddressService;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUser;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserService;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class AppDbAddressServiceBenchmark extends AbstractServiceBenchmark {
+
+    public static final int SEED_USERS = 100;
+
+    private SecDbUserService secDbUserService;
+    private AppDbAddressService appDbAddressService;
+
+    private final List<CFLibDbKeyHash256> userPids = new ArrayList<>();
+    private final List<AppDbAddress> addresses = new ArrayList<>();
+
+    @Override
+    protected String[] transactionManagerNames() {
+        // AppDbAddressService validates its RefUID through the secdb silo, so warm both persistence contexts
+        return new String[] { "appTransactionManager", "secTransactionManager" };
+    }
+
+    @Override
+    protected void lookupServices() {
+        secDbUserService = context.getBean(SecDbUserService.class);
+        appDbAddressService = context.getBean(AppDbAddressService.class);
+    }
+
+    @Override
+    protected void seed() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < SEED_USERS; i++) {
+            CFLibDbKeyHash256 creator = new CFLibDbKeyHash256(0);
+            String name = uniqueName("a");
+            SecDbUser user = secDbUserService.create(new SecDbUser(null, name, name + "@bench.local", "bench", now, creator, now, creator));
+            userPids.add(user.getPid());
+        }
+        for (int i = 0; i < SEED_ROWS; i++) {
+            addresses.add(appDbAddressService.create(newAddress(null, userPids.get(i % userPids.size()), uniqueName("a"))));
+        }
+    }
+
+    private static AppDbAddress newAddress(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 refUID, String addressName) {
+        LocalDateTime now = LocalDateTime.now();
+        return new AppDbAddress(pid, refUID, addressName, "Benchmark Contact", null,
+            "1 Benchmark Street", null, "Yorkton", "SK", "Canada", "S3N 0X3",
+            now, refUID, now, refUID);
+    }
+
+    @Benchmark
+    public AppDbAddress find() {
+        return appDbAddressService.find(addresses.get(randomIndex(addresses.size())).getPid());
+    }
+
+    @Benchmark
+    public List<AppDbAddress> findByRefUID() {
+        return appDbAddressService.findByRefUID(userPids.get(randomIndex(userPids.size())));
+    }
+
+    @Benchmark
+    public AppDbAddress findByRefUIDName() {
+        AppDbAddress address = addresses.get(randomIndex(addresses.size()));
+        return appDbAddressService.findByRefUIDName(address.getRefUID(), address.getAddressName());
+    }
+
+    @Benchmark
+    public AppDbAddress create() {
+        return appDbAddressService.create(newAddress(null, userPids.get(randomIndex(userPids.size())), uniqueName("a")));
+    }
+
+    @Benchmark
+    public AppDbAddress update() {
+        AppDbAddress address = addresses.get(randomIndex(addresses.size()));
+        return appDbAddressService.update(newAddress(address.getPid(), address.getRefUID(), address.getAddressName()));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.PropertiesPropertySource;
+
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import server.markhome.msscf.msscf.cflib.inz.Inz;
+import server.markhome.msscf.msscf.cflib.inz.InzPathEntry;
+
+/**
+ * Boots the DbTest Spring context once per benchmark JVM against a stand-in database.
+ *
+ * By default an in-memory H2 database in PostgreSQL mode is used.  Set -Ddbtest.bench.jdbc.url
+ * (and optionally .user, .password, .driver and .dialect) to run against a locally started PostgreSQL instead.
+ * The settings are written to a throw-away ~/.dbtest.properties under a temporary user.home, so the
+ * application's own property precedence chain is exercised unchanged.
+ */
+public final class DbTestBenchmarkContext {
+
+    private static final AtomicReference<ConfigurableApplicationContext> context = new AtomicReference<>(null);
+
+    private DbTestBenchmarkContext() {
+    }
+
+    public static synchronized ConfigurableApplicationContext get() {
+        if (context.get() == null) {
+            context.set(start());
+        }
+        return context.get();
+    }
+
+    public static synchronized void close() {
+        ConfigurableApplicationContext ctx = context.getAndSet(null);
+        if (ctx != null) {
+            ctx.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext start() {
+        Properties benchProps = new Properties();
+        String url = System.getProperty("dbtest.bench.jdbc.url");
+        if (url != null && !url.isEmpty()) {
+            benchProps.setProperty("jakarta.persistence.jdbc.driver", System.getProperty("dbtest.bench.jdbc.driver", "org.postgresql.Driver"));
+            benchProps.setProperty("jakarta.persistence.jdbc.url", url);
+            benchProps.setProperty("jakarta.persistence.jdbc.user", System.getProperty("dbtest.bench.jdbc.user", "postgres"));
+            benchProps.setProperty("jakarta.persistence.jdbc.password", System.getProperty("dbtest.bench.jdbc.password", "pgpassword"));
+            benchProps.setProperty("hibernate.dialect", System.getProperty("dbtest.bench.dialect", "org.hibernate.dialect.PostgreSQLDialect"));
+        }
+        else {
+            benchProps.setProperty("jakarta.persistence.jdbc.driver", "org.h2.Driver");
+            benchProps.setProperty("jakarta.persistence.jdbc.url", "jdbc:h2:mem:dbtestbench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1");
+            benchProps.setProperty("jakarta.persistence.jdbc.user", "sa");
+            benchProps.setProperty("jakarta.persistence.jdbc.password", "sa");
+            benchProps.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+            // The migration scripts are PostgreSQL DDL, so the in-memory database is built from the mappings instead
+            benchProps.setProperty("migrations.enabled", "false");
+            benchProps.setProperty("secdb.hibernate.hbm2ddl.auto", "create");
+            benchProps.setProperty("appdb.hibernate.hbm2ddl.auto", "create");
+        }
+        benchProps.setProperty("secdb.hibernate.show_sql", "false");
+        benchProps.setProperty("appdb.hibernate.show_sql", "false");
+
+        try {
+            File home = Files.createTempDirectory("dbtest-bench").toFile();
+            home.deleteOnExit();
+            File userFile = new File(home, ".dbtest.properties");
+            try (FileOutputStream out = new FileOutputStream(userFile)) {
+                benchProps.store(out, "DbTest benchmark settings");
+            }
+            userFile.deleteOnExit();
+            System.setProperty("user.home", home.getAbsolutePath());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to prepare benchmark user.home - " + e.getMessage(), e);
+        }
+
+        Inz.addPathEntry(new InzPathEntry(DbTest.class, "resource:server/markhome/msscf/msscf/cflib/dbtest/langs"));
+
+        // Same cadence as DbTest.main() so errors surface in the same order
+        Properties mergedProperties = DbTest.getApplicationProperties();
+        mergedProperties = DbTest.getUserDefaultProperties();
+        mergedProperties = DbTest.getSystemProperties();
+        mergedProperties = DbTest.getUserProperties();
+        mergedProperties = DbTest.getMergedProperties();
+        System.getProperties().putAll(mergedProperties);
+
+        return new SpringApplicationBuilder(DbTest.class)
+            .web(WebApplicationType.NONE)
+            .initializers((applicationContext) -> {
+                applicationContext.getEnvironment().getPropertySources().addLast(new PropertiesPropertySource("userProperties", DbTest.getUserProperties()));
+            })
+            .run();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the service benchmarks twice: once in throughput mode reporting ops/sec, and once in
+ * sample mode reporting the per-call latency distribution (p50, p90, p99, ...) in microseconds.
+ *
+ * Any standard JMH command line options (benchmark regexp, -f, -wi, -i, -p persistenceContext=warm, ...)
+ * are honoured; use org.openjdk.jmh.Main directly to run a single mode.
+ */
+public class DbTestBenchmarks {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+
+        new Runner(options(cmdOptions, Mode.Throughput, TimeUnit.SECONDS)).run();
+        new Runner(options(cmdOptions, Mode.SampleTime, TimeUnit.MICROSECONDS)).run();
+    }
+
+    private static Options options(CommandLineOptions cmdOptions, Mode mode, TimeUnit timeUnit) {
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        if (cmdOptions.getIncludes().isEmpty()) {
+            builder.include(DbTestBenchmarks.class.getPackageName() + ".*Benchmark");
+        }
+        builder.mode(mode);
+        builder.timeUnit(timeUnit);
+        return builder.build();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+
+import server.markhome.msscf.msscf.cflib.dbtest.appdb.AppDbAddress;
+import server.markhome.msscf.msscf.cflib.dbtest.appdb.AppDbAddressRepository;
+import server.markhome.msscf.msscf.cflib.dbtest.appdb.AppDbAddressService;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUser;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserRepository;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserService;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+/**
+ * Compares the query-by-example lookups the services used to build on every call against the named
+ * queries that replaced them.  Both variants go straight to the repositories so that the difference is
+ * the per-call probe/ExampleMatcher/criteria construction rather than service overhead.
+ */
+public class LookupQueryBenchmark extends AbstractServiceBenchmark {
+
+    public static final int SEED_USERS = 100;
+
+    private SecDbUserRepository secDbUserRepository;
+    private AppDbAddressRepository appDbAddressRepository;
+    private SecDbUserService secDbUserService;
+    private AppDbAddressService appDbAddressService;
+
+    private final List<String> userNames = new ArrayList<>();
+    private final List<AppDbAddress> addresses = new ArrayList<>();
+
+    @Override
+    protected String[] transactionManagerNames() {
+        return new String[] { "appTransactionManager", "secTransactionManager" };
+    }
+
+    @Override
+    protected void lookupServices() {
+        secDbUserRepository = context.getBean(SecDbUserRepository.class);
+        appDbAddressRepository = context.getBean(AppDbAddressRepository.class);
+        secDbUserService = context.getBean(SecDbUserService.class);
+        appDbAddressService = context.getBean(AppDbAddressService.class);
+    }
+
+    @Override
+    protected void seed() {
+        LocalDateTime now = LocalDateTime.now();
+        List<CFLibDbKeyHash256> userPids = new ArrayList<>();
+        for (int i = 0; i < SEED_USERS; i++) {
+            CFLibDbKeyHash256 creator = new CFLibDbKeyHash256(0);
+            String name = uniqueName("q");
+            SecDbUser user = secDbUserService.create(new SecDbUser(null, name, name + "@bench.local", "bench", now, creator, now, creator));
+            userPids.add(user.getPid());
+            userNames.add(user.getUsername());
+        }
+        for (int i = 0; i < SEED_ROWS; i++) {
+            CFLibDbKeyHash256 refUID = userPids.get(i % userPids.size());
+            addresses.add(appDbAddressService.create(new AppDbAddress(null, refUID, uniqueName("q"), "Benchmark Contact", null,
+                "1 Benchmark Street", null, "Yorkton", "SK", "Canada", "S3N 0X3", now, refUID, now, refUID)));
+        }
+    }
+
+    @Benchmark
+    public SecDbUser userByExample() {
+        SecDbUser probe = new SecDbUser();
+        probe.setUsername(userNames.get(randomIndex(userNames.size())));
+        ExampleMatcher matcher = ExampleMatcher.matching()
+            .withIgnoreNullValues()
+            .withMatcher("username", ExampleMatcher.GenericPropertyMatchers.exact());
+        return secDbUserRepository.findOne(Example.of(probe, matcher)).orElse(null);
+    }
+
+    @Benchmark
+    public SecDbUser userByNamedQuery() {
+        return secDbUserRepository.findByUsername(userNames.get(randomIndex(userNames.size()))).orElse(null);
+    }
+
+    @Benchmark
+    public AppDbAddress addressByExample() {
+        AppDbAddress address = addresses.get(randomIndex(addresses.size()));
+        AppDbAddress probe = new AppDbAddress();
+        probe.setRefUID(address.getRefUID());
+        probe.setAddressName(address.getAddressName());
+        ExampleMatcher matcher = ExampleMatcher.matching()
+            .withIgnoreNullValues()
+            .withMatcher("refuid, addrname", ExampleMatcher.GenericPropertyMatchers.exact());
+        return appDbAddressRepository.findOne(Example.of(probe, matcher)).orElse(null);
+    }
+
+    @Benchmark
+    public AppDbAddress addressByNamedQuery() {
+        AppDbAddress address = addresses.get(randomIndex(addresses.size()));
+        return appDbAddressRepository.findByRefUIDAndAddressName(address.getRefUID(), address.getAddressName()).orElse(null);
+    }
+}
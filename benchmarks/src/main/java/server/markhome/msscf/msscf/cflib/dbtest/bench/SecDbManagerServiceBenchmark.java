@@ -0,0 +1,99 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbManager;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbManagerService;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUser;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class SecDbManagerServiceBenchmark extends AbstractServiceBenchmark {
+
+    private SecDbManagerService secDbManagerService;
+
+    private final List<CFLibDbKeyHash256> pids = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<String> deptCodes = new ArrayList<>();
+
+    @Override
+    protected String[] transactionManagerNames() {
+        return new String[] { "secTransactionManager" };
+    }
+
+    @Override
+    protected void lookupServices() {
+        secDbManagerService = context.getBean(SecDbManagerService.class);
+    }
+
+    @Override
+    protected void seed() {
+        for (int i = 0; i < SEED_ROWS; i++) {
+            SecDbManager manager = secDbManagerService.create(newManager());
+            pids.add(manager.getPid());
+            names.add(manager.getUsername());
+            deptCodes.add(manager.getDepartmentCode());
+        }
+    }
+
+    private static SecDbManager newManager() {
+        LocalDateTime now = LocalDateTime.now();
+        CFLibDbKeyHash256 creator = new CFLibDbKeyHash256(0);
+        String name = uniqueName("m");
+        return new SecDbManager(null, name, name + "@bench.local", "bench", "Benchmark Manager", uniqueName("d"),
+            null, null,
+            now, creator,
+            now, creator);
+    }
+
+    @Benchmark
+    public SecDbUser find() {
+        return secDbManagerService.find(pids.get(randomIndex(pids.size())));
+    }
+
+    @Benchmark
+    public SecDbUser findByName() {
+        return secDbManagerService.findByName(names.get(randomIndex(names.size())));
+    }
+
+    @Benchmark
+    public List<SecDbManager> findByDeptCode() {
+        return secDbManagerService.findByDeptCode(deptCodes.get(randomIndex(deptCodes.size())));
+    }
+
+    @Benchmark
+    public SecDbManager create() {
+        return secDbManagerService.create(newManager());
+    }
+
+    @Benchmark
+    public SecDbManager update() {
+        int index = randomIndex(pids.size());
+        SecDbManager data = new SecDbManager(pids.get(index), names.get(index), uniqueName("e") + "@bench.local", "Benchmark Manager", deptCodes.get(index));
+        data.setUpdatedBy(pids.get(index));
+        return secDbManagerService.update(data);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbSession;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbSessionService;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUser;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserService;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class SecDbSessionServiceBenchmark extends AbstractServiceBenchmark {
+
+    public static final int SEED_USERS = 100;
+
+    private SecDbUserService secDbUserService;
+    private SecDbSessionService secDbSessionService;
+
+    private final List<SecDbUser> users = new ArrayList<>();
+    private final List<CFLibDbKeyHash256> pids = new ArrayList<>();
+
+    @Override
+    protected String[] transactionManagerNames() {
+        return new String[] { "secTransactionManager" };
+    }
+
+    @Override
+    protected void lookupServices() {
+        secDbUserService = context.getBean(SecDbUserService.class);
+        secDbSessionService = context.getBean(SecDbSessionService.class);
+    }
+
+    @Override
+    protected void seed() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < SEED_USERS; i++) {
+            CFLibDbKeyHash256 creator = new CFLibDbKeyHash256(0);
+            String name = uniqueName("s");
+            users.add(secDbUserService.create(new SecDbUser(null, name, name + "@bench.local", "bench", now, creator, now, creator)));
+        }
+        for (int i = 0; i < SEED_ROWS; i++) {
+            SecDbSession sess = secDbSessionService.create(newSession(users.get(i % users.size())));
+            pids.add(sess.getPid());
+        }
+    }
+
+    private static SecDbSession newSession(SecDbUser user) {
+        return new SecDbSession(null, user, "Benchmark session", LocalDateTime.now(), null, null);
+    }
+
+    @Benchmark
+    public SecDbSession find() {
+        return secDbSessionService.find(pids.get(randomIndex(pids.size())));
+    }
+
+    @Benchmark
+    public List<SecDbSession> findByUser() {
+        return secDbSessionService.findByUser(users.get(randomIndex(users.size())));
+    }
+
+    @Benchmark
+    public SecDbSession create() {
+        return secDbSessionService.create(newSession(users.get(randomIndex(users.size()))));
+    }
+
+    @Benchmark
+    public SecDbSession update() {
+        SecDbSession data = new SecDbSession(pids.get(randomIndex(pids.size())), null);
+        data.setTerminatedAt(LocalDateTime.now());
+        data.setSessTerminationInfo("Benchmark termination");
+        return secDbSessionService.update(data);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.bench;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUser;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserService;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class SecDbUserServiceBenchmark extends AbstractServiceBenchmark {
+
+    private SecDbUserService secDbUserService;
+
+    private final List<CFLibDbKeyHash256> pids = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+
+    @Override
+    protected String[] transactionManagerNames() {
+        return new String[] { "secTransactionManager" };
+    }
+
+    @Override
+    protected void lookupServices() {
+        secDbUserService = context.getBean(SecDbUserService.class);
+    }
+
+    @Override
+    protected void seed() {
+        for (int i = 0; i < SEED_ROWS; i++) {
+            SecDbUser user = secDbUserService.create(newUser());
+            pids.add(user.getPid());
+            names.add(user.getUsername());
+        }
+    }
+
+    private static SecDbUser newUser() {
+        LocalDateTime now = LocalDateTime.now();
+        CFLibDbKeyHash256 creator = new CFLibDbKeyHash256(0);
+        String name = uniqueName("u");
+        return new SecDbUser(null, name, name + "@bench.local", "bench", now, creator, now, creator);
+    }
+
+    @Benchmark
+    public SecDbUser find() {
+        return secDbUserService.find(pids.get(randomIndex(pids.size())));
+    }
+
+    @Benchmark
+    public SecDbUser findByName() {
+        return secDbUserService.findByName(names.get(randomIndex(names.size())));
+    }
+
+    @Benchmark
+    public SecDbUser create() {
+        return secDbUserService.create(newUser());
+    }
+
+    @Benchmark
+    public SecDbUser update() {
+        int index = randomIndex(pids.size());
+        SecDbUser data = new SecDbUser(pids.get(index), names.get(index), uniqueName("e") + "@bench.local", "bench");
+        data.setUpdatedBy(pids.get(index));
+        return secDbUserService.update(data);
+    }
+}
@@ -114,13 +114,20 @@ public class DbTest
         return userDefaultProperties.get();
     }
 
+    /**
+     * The user properties file, .dbtest.properties in their home directory.
+     */
+    public static File getUserPropertiesFile() {
+        return new File(System.getProperty("user.home"), ".dbtest.properties");
+    }
+
     /**
      * Loads the user properties file from their home directory.
      */
     public static Properties getUserProperties() {
         if (userProperties.get() == null) {
             Properties props = new Properties();
-            File userFile = new File(System.getProperty("user.home"), ".dbtest.properties");
+            File userFile = getUserPropertiesFile();
             if (userFile.exists()) {
                 try (FileInputStream fis = new FileInputStream(userFile)) {
                     props.load(fis);
@@ -171,6 +178,36 @@ public class DbTest
         return mergedProperties.get();
     }
 
+    /**
+     * Re-reads the user properties file and returns a fresh merge that uses it, without replacing the merged
+     * properties.  Returns null if the file is missing, as it briefly is while some editors save it.
+     */
+    public static Properties readMergedProperties() {
+        File userFile = getUserPropertiesFile();
+        if (!userFile.exists()) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream(userFile)) {
+            props.load(fis);
+        } catch (IOException e) {
+            throw new RuntimeException(Inz.x("cflib.dbtest.FailedToLoadUserProperties"), e);
+        }
+        Properties merged = new Properties();
+        merged.putAll(getApplicationProperties());
+        merged.putAll(getUserDefaultProperties());
+        merged.putAll(getSystemProperties());
+        merged.putAll(props);
+        return merged;
+    }
+
+    /**
+     * Replaces the merged properties, once SiloConfig.reload() has validated a readMergedProperties() result.
+     */
+    public static void setMergedProperties(Properties merged) {
+        mergedProperties.set(merged);
+    }
+
     public static void main(String[] args) {
         Inz.addPathEntry(new InzPathEntry(DbTest.class, "resource:server/markhome/msscf/msscf/cflib/dbtest/langs"));
 
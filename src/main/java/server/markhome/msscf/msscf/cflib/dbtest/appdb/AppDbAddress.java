@@ -27,16 +27,21 @@ import org.hibernate.annotations.UpdateTimestamp;
 import java.time.LocalDateTime;
 
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUser;
 import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserService;
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @Entity
+@DynamicUpdate
+@NamedQuery(name = "AppDbAddress.findByRefUIDAndAddressName",
+    query = "select a from AppDbAddress a where a.refUID = :refUID and a.addressName = :addressName")
 @Table(name = "app_addr", schema = "appdb",
     indexes = {
         @Index(name = "app_addr_pidx", columnList = "pid", unique = true),
         @Index(name = "app_addr_axname", columnList = "refuid,addrname", unique = true),
+        @Index(name = "app_addr_dxrefuidpid", columnList = "refuid,pid", unique = false),
     }
 )
 @PersistenceContext(unitName = "AppDbPU")
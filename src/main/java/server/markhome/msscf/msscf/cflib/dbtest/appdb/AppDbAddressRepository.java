@@ -21,10 +21,22 @@
 package server.markhome.msscf.msscf.cflib.dbtest.appdb;
 
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import java.util.List;
+import java.util.Optional;
 
 
-public interface AppDbAddressRepository extends JpaRepository<AppDbAddress, CFLibDbKeyHash256> {
+public interface AppDbAddressRepository extends JpaRepository<AppDbAddress, CFLibDbKeyHash256>, AppDbAddressRepositoryCustom {
     public List<AppDbAddress> findByRefUID(CFLibDbKeyHash256 refUID);
+
+    /** Named query AppDbAddress.findByRefUIDAndAddressName, served by the app_addr_axname unique index. */
+    public Optional<AppDbAddress> findByRefUIDAndAddressName(@Param("refUID") CFLibDbKeyHash256 refUID, @Param("addressName") String addressName);
+
+    // Keyset pages: rows whose pid sorts after the previous page's last pid, in pid order
+
+    @Query("select a from AppDbAddress a where a.refUID = :refUID and a.pid.bytes > :after order by a.pid.bytes")
+    public List<AppDbAddress> findByRefUIDAfter(@Param("refUID") CFLibDbKeyHash256 refUID, @Param("after") byte[] after, Limit limit);
 }
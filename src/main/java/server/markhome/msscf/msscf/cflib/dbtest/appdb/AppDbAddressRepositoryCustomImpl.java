@@ -0,0 +1,82 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.appdb;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.hibernate.query.NativeQuery;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloPatches;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloStreams;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class AppDbAddressRepositoryCustomImpl implements AppDbAddressRepositoryCustom {
+
+    private static final String INSERT_IF_ABSENT =
+        "INSERT INTO {h-schema}app_addr (pid, refuid, addrname, addrcontact, addrapt, addrstreet, addrstreet2, addrcity, addrprovince, addrcountry, addrpostalcode, "
+        + "created_at, created_by, updated_at, updated_by) "
+        + "VALUES (:pid, :refUID, :addressName, :addressContact, :addressApartment, :addressStreet, :addressStreet2, :addressCity, :addressProvince, :addressCountry, :addressPostalCode, "
+        + ":createdAt, :createdBy, :updatedAt, :updatedBy) "
+        + "ON CONFLICT (pid) DO NOTHING";
+
+    public static final Set<String> PATCHABLE = Set.of("refUID", "addressName", "addressContact", "addressApartment", "addressStreet", "addressStreet2",
+        "addressCity", "addressProvince", "addressCountry", "addressPostalCode", "updatedBy");
+
+    @PersistenceContext(unitName = AppDbConfig.persistenceUnitName)
+    private EntityManager appEntityManager;
+
+    @Override
+    public boolean insertIfAbsent(AppDbAddress data) {
+        NativeQuery<Object> query = SiloNativeSql.statement(appEntityManager, INSERT_IF_ABSENT, AppDbAddress.class);
+        SiloNativeSql.bindKey(query, "pid", data.getPid());
+        SiloNativeSql.bindKey(query, "refUID", data.getRefUID());
+        SiloNativeSql.bindString(query, "addressName", data.getAddressName());
+        SiloNativeSql.bindString(query, "addressContact", data.getAddressContact());
+        SiloNativeSql.bindString(query, "addressApartment", data.getAddressApartment());
+        SiloNativeSql.bindString(query, "addressStreet", data.getAddressStreet());
+        SiloNativeSql.bindString(query, "addressStreet2", data.getAddressStreet2());
+        SiloNativeSql.bindString(query, "addressCity", data.getAddressCity());
+        SiloNativeSql.bindString(query, "addressProvince", data.getAddressProvince());
+        SiloNativeSql.bindString(query, "addressCountry", data.getAddressCountry());
+        SiloNativeSql.bindString(query, "addressPostalCode", data.getAddressPostalCode());
+        SiloNativeSql.bindTimestamp(query, "createdAt", data.getCreatedAt());
+        SiloNativeSql.bindKey(query, "createdBy", data.getCreatedBy());
+        SiloNativeSql.bindTimestamp(query, "updatedAt", data.getUpdatedAt());
+        SiloNativeSql.bindKey(query, "updatedBy", data.getUpdatedBy());
+        return query.executeUpdate() > 0;
+    }
+
+    @Override
+    public int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes) {
+        return SiloPatches.patch(appEntityManager, AppDbAddress.class, pid, changes, PATCHABLE, true);
+    }
+
+    @Override
+    public Stream<AppDbAddress> streamAll(int fetchSize) {
+        return SiloStreams.detaching(appEntityManager, AppDbAddress.class, "select x from AppDbAddress x", fetchSize);
+    }
+}
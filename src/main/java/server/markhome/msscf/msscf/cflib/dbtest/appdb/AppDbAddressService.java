@@ -22,21 +22,37 @@ package server.markhome.msscf.msscf.cflib.dbtest.appdb;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.Set;
 
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import server.markhome.msscf.msscf.cflib.dbtest.common.BatchResult;
+import server.markhome.msscf.msscf.cflib.dbtest.common.KeysetPage;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloBatches;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloStreams;
 import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUser;
-import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserService;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserRefCache;
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.PersistenceContext;
 
 @Service("AppDbAddressService")
 public class AppDbAddressService {
@@ -49,14 +65,27 @@ public class AppDbAddressService {
     private AppDbAddressRepository appDbAddressRepository;
 
     @Autowired
-    private SecDbUserService secDbUserService;
+    private SecDbUserRefCache secDbUserRefCache;
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
+    @PersistenceContext(unitName = AppDbConfig.persistenceUnitName)
+    private EntityManager appEntityManager;
+
+    @Autowired
+    @Qualifier("appTransactionManager")
+    private PlatformTransactionManager appTransactionManager;
+
+    @Autowired
+    @Qualifier("appJpaProperties")
+    private Properties appJpaProperties;
+
+    private volatile Boolean insertIfAbsentEnabled = null;
+
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
     public AppDbAddress find(CFLibDbKeyHash256 pid) {
         return appDbAddressRepository.findById(pid).orElse(null);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
     public List<AppDbAddress> findByRefUID(CFLibDbKeyHash256 refUID) {
         if (refUID == null || refUID.isNull()) {
             return new ArrayList<>();
@@ -64,7 +93,21 @@ public class AppDbAddressService {
         return appDbAddressRepository.findByRefUID(refUID);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
+    /**
+     * One keyset page of the addresses of a user, in pid order.
+     * Pass null as pageToken for the first page, then the previous page's getNextToken().
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
+    public KeysetPage<AppDbAddress> findByRefUID(CFLibDbKeyHash256 refUID, String pageToken, int pageSize) {
+        KeysetPage.checkPageSize(pageSize);
+        if (refUID == null || refUID.isNull()) {
+            return new KeysetPage<>(new ArrayList<>(), null);
+        }
+        List<AppDbAddress> fetched = appDbAddressRepository.findByRefUIDAfter(refUID, KeysetPage.decodeToken(pageToken), Limit.of(pageSize + 1));
+        return KeysetPage.of(fetched, pageSize, AppDbAddress::getPid);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
     public List<AppDbAddress> findByUser(SecDbUser user) {
         if (user == null || user.getPid() == null || user.getPid().isNull()) {
             return new ArrayList<>();
@@ -72,42 +115,27 @@ public class AppDbAddressService {
         return appDbAddressRepository.findByRefUID(user.getPid());
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
     public AppDbAddress findByRefUIDName(CFLibDbKeyHash256 refUID, String addressName) {
         if (refUID == null || refUID.isNull() || addressName == null || addressName.isEmpty()) {
             return null;
         }
-        AppDbAddress probe = new AppDbAddress();
-        probe.setRefUID(refUID);
-        probe.setAddressName(addressName);
-
-        ExampleMatcher matcher = ExampleMatcher.matching()
-            .withIgnoreNullValues()
-            .withMatcher("refuid, addrname", ExampleMatcher.GenericPropertyMatchers.exact());
-
-        Example<AppDbAddress> example = Example.of(probe, matcher);
-
-        return appDbAddressRepository.findOne(example).orElse(null);
+        return appDbAddressRepository.findByRefUIDAndAddressName(refUID, addressName).orElse(null);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
     public AppDbAddress findByUserName(SecDbUser user, String addressName) {
         if (user == null || user.getPid() == null || user.getPid().isNull() || addressName == null || addressName.isEmpty()) {
             return null;
         }
-        AppDbAddress probe = new AppDbAddress();
-        probe.setRefUID(user.getPid());
-        probe.setAddressName(addressName);
-
-        ExampleMatcher matcher = ExampleMatcher.matching()
-            .withIgnoreNullValues()
-            .withMatcher("refuid, addrname", ExampleMatcher.GenericPropertyMatchers.exact());
-
-        Example<AppDbAddress> example = Example.of(probe, matcher);
-
-        return appDbAddressRepository.findOne(example).orElse(null);
+        return appDbAddressRepository.findByRefUIDAndAddressName(user.getPid(), addressName).orElse(null);
     }
 
+    /**
+     * Stores data unless a row with its pid already exists, in which case the stored row is returned instead.
+     * When create.insert-if-absent is in effect the new row is written by one native INSERT and data itself is
+     * returned, detached: later changes to it are not flushed, so pass it to update() to change the row.
+     */
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
     public AppDbAddress create(AppDbAddress data) {
         if (data == null) {
@@ -116,8 +144,7 @@ public class AppDbAddressService {
         if (data.getRefUID() == null || data.getRefUID().isNull()) {
             throw new IllegalArgumentException("AppDbAddressService.create() Cannot create data without a valid RefUID");
         }
-        SecDbUser user = secDbUserService.find(data.getRefUID());
-        if (user == null) {
+        if (!secDbUserRefCache.exists(data.getRefUID())) {
             throw new IllegalArgumentException("AppDbAddressService.create() RefUID " + data.getRefUID().toString() + " does not reference an existing SecDbUser");
         }
         CFLibDbKeyHash256 originalPid = data.getPid();
@@ -131,7 +158,15 @@ public class AppDbAddressService {
             data.setCreatedAt(now);
             data.setUpdatedAt(now);
 
-            // Check if already exists
+            if (isInsertIfAbsentEnabled()) {
+                // One INSERT ... ON CONFLICT (pid) DO NOTHING; only a conflicting pid costs a second read
+                if (appDbAddressRepository.insertIfAbsent(data)) {
+                    return data;
+                }
+                return appDbAddressRepository.findById(data.getPid()).orElse(null);
+            }
+
+            // Check if already exists (portable fallback for dialects without ON CONFLICT)
             if (data.getPid() != null && appDbAddressRepository.existsById(data.getPid())) {
                 return appDbAddressRepository.findById(data.getPid()).orElse(null);
             }
@@ -160,8 +195,7 @@ public class AppDbAddressService {
         if (data.getRefUID() == null || data.getRefUID().isNull()) {
             throw new IllegalArgumentException("AppDbAddressService.update() Cannot update data without a valid RefUID");
         }
-        SecDbUser user = secDbUserService.find(data.getRefUID());
-        if (user == null) {
+        if (!secDbUserRefCache.exists(data.getRefUID())) {
             throw new IllegalArgumentException("AppDbAddressService.update() RefUID " + data.getRefUID().toString() + " does not reference an existing SecDbUser");
         }
 
@@ -169,6 +203,158 @@ public class AppDbAddressService {
         AppDbAddress existing = appDbAddressRepository.findById(data.getPid())
             .orElseThrow(() -> new NoResultException("AppDbAddress with pid " + data.getPid() + " does not exist"));
 
+        applyUpdate(existing, data, LocalDateTime.now());
+
+        return appDbAddressRepository.save(existing);
+    }
+
+    /**
+     * Changes only the given attributes of the row identified by pid with a bulk UPDATE, without reading
+     * the row first, updatedAt is stamped as update() does.  Attribute names are the entity's field names.
+     * An instance of the row already loaded in the current transaction is refreshed (see SiloPatches).
+     */
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "appTransactionManager")
+    public int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes) {
+        if (pid == null || pid.isNull()) {
+            throw new IllegalArgumentException("Cannot patch AppDbAddress with null primary identifier (pid)");
+        }
+        if (changes == null || changes.isEmpty()) {
+            return 0;
+        }
+        Object refUID = changes.get("refUID");
+        if (changes.containsKey("refUID")) {
+            if (!(refUID instanceof CFLibDbKeyHash256) || ((CFLibDbKeyHash256)refUID).isNull()) {
+                throw new IllegalArgumentException("AppDbAddressService.patch() Cannot patch data without a valid RefUID");
+            }
+            if (!secDbUserRefCache.exists((CFLibDbKeyHash256)refUID)) {
+                throw new IllegalArgumentException("AppDbAddressService.patch() RefUID " + refUID.toString() + " does not reference an existing SecDbUser");
+            }
+        }
+        int count = appDbAddressRepository.patch(pid, changes);
+        if (count == 0) {
+            throw new NoResultException("AppDbAddress with pid " + pid + " does not exist");
+        }
+        return count;
+    }
+
+    /**
+     * Hands every AppDbAddress to consumer in constant heap, for audits and exports.  Rows are read through a cursor
+     * of appdb.export.fetch-size rows in a dedicated read-only transaction; consumer receives detached instances.
+     * Returns the number of rows exported.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true, transactionManager = "appTransactionManager")
+    public long exportAll(Consumer<AppDbAddress> consumer) {
+        int fetchSize = SiloStreams.fetchSize(DbTest.getMergedProperties(), "appdb");
+        long count = 0L;
+        try (Stream<AppDbAddress> rows = appDbAddressRepository.streamAll(fetchSize)) {
+            Iterator<AppDbAddress> iter = rows.iterator();
+            while (iter.hasNext()) {
+                consumer.accept(iter.next());
+                count++;
+                if (count % fetchSize == 0L) {
+                    appEntityManager.clear();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates the rows in JDBC batches of hibernate.jdbc.batch_size, one transaction per batch.
+     * Each distinct RefUID of a batch is validated once, and rows whose pid already exists are
+     * returned as stored, as create() does.
+     * A pid repeated within a batch is created once and its later occurrences are returned as that row.
+     * The pids and timestamps stamped on the rows of a batch that rolls back are reverted.
+     */
+    public BatchResult<AppDbAddress> createAll(Collection<AppDbAddress> data) {
+        return SiloBatches.run(appTransactionManager, "AppDbAddressService.createAll", data, SiloBatches.batchSize(appJpaProperties), (batch, undo) -> {
+            validateRefUIDs(batch, "createAll");
+            LocalDateTime now = LocalDateTime.now();
+            for (AppDbAddress row : batch) {
+                CFLibDbKeyHash256 pid = row.getPid();
+                LocalDateTime createdAt = row.getCreatedAt();
+                LocalDateTime updatedAt = row.getUpdatedAt();
+                undo.record(() -> {
+                    row.setPid(pid);
+                    row.setCreatedAt(createdAt);
+                    row.setUpdatedAt(updatedAt);
+                });
+                if (row.getPid() == null) {
+                    row.setPid(new CFLibDbKeyHash256(0));
+                }
+                row.setCreatedAt(now);
+                row.setUpdatedAt(now);
+            }
+            Map<CFLibDbKeyHash256, AppDbAddress> existing = SiloBatches.indexBy(
+                appDbAddressRepository.findAllById(SiloBatches.keysOf(batch, AppDbAddress::getPid)), AppDbAddress::getPid);
+            List<AppDbAddress> stored = new ArrayList<>(batch.size());
+            for (AppDbAddress row : batch) {
+                AppDbAddress found = existing.get(row.getPid());
+                if (found != null) {
+                    stored.add(found);
+                }
+                else {
+                    appEntityManager.persist(row);
+                    // A pid repeated later in the batch is returned as this row rather than persisted twice
+                    existing.put(row.getPid(), row);
+                    stored.add(row);
+                }
+            }
+            return stored;
+        });
+    }
+
+    /**
+     * Updates the rows in JDBC batches of hibernate.jdbc.batch_size, one transaction per batch.
+     * A missing pid fails its whole batch with a NoResultException.
+     */
+    public BatchResult<AppDbAddress> updateAll(Collection<AppDbAddress> data) {
+        return SiloBatches.run(appTransactionManager, "AppDbAddressService.updateAll", data, SiloBatches.batchSize(appJpaProperties), (batch) -> {
+            for (AppDbAddress row : batch) {
+                if (row.getPid() == null || row.getPid().isNull()) {
+                    throw new IllegalArgumentException("Cannot update AppDbAddress with null primary identifier (pid)");
+                }
+            }
+            validateRefUIDs(batch, "updateAll");
+            LocalDateTime now = LocalDateTime.now();
+            Map<CFLibDbKeyHash256, AppDbAddress> existing = SiloBatches.indexBy(
+                appDbAddressRepository.findAllById(SiloBatches.keysOf(batch, AppDbAddress::getPid)), AppDbAddress::getPid);
+            List<AppDbAddress> stored = new ArrayList<>(batch.size());
+            for (AppDbAddress row : batch) {
+                AppDbAddress target = existing.get(row.getPid());
+                if (target == null) {
+                    throw new NoResultException("AppDbAddress with pid " + row.getPid() + " does not exist");
+                }
+                applyUpdate(target, row, now);
+                stored.add(target);
+            }
+            return stored;
+        });
+    }
+
+    private void validateRefUIDs(List<AppDbAddress> batch, String operation) {
+        Set<CFLibDbKeyHash256> refUIDs = new HashSet<>();
+        for (AppDbAddress row : batch) {
+            if (row.getRefUID() == null || row.getRefUID().isNull()) {
+                throw new IllegalArgumentException("AppDbAddressService." + operation + "() Cannot store data without a valid RefUID");
+            }
+            refUIDs.add(row.getRefUID());
+        }
+        for (CFLibDbKeyHash256 refUID : refUIDs) {
+            if (!secDbUserRefCache.exists(refUID)) {
+                throw new IllegalArgumentException("AppDbAddressService." + operation + "() RefUID " + refUID.toString() + " does not reference an existing SecDbUser");
+            }
+        }
+    }
+
+    private boolean isInsertIfAbsentEnabled() {
+        if (insertIfAbsentEnabled == null) {
+            insertIfAbsentEnabled = SiloNativeSql.isInsertIfAbsentEnabled(DbTest.getMergedProperties(), "appdb");
+        }
+        return insertIfAbsentEnabled;
+    }
+
+    private void applyUpdate(AppDbAddress existing, AppDbAddress data, LocalDateTime now) {
         // Update fields (except pid, createdAt)
         existing.setRefUID(data.getRefUID());
         existing.setAddressName(data.getAddressName());
@@ -182,8 +368,6 @@ public class AppDbAddressService {
         existing.setAddressStreet2(data.getAddressStreet2());
 
         // ... update other fields as needed ...
-        existing.setUpdatedAt(LocalDateTime.now());
-
-        return appDbAddressRepository.save(existing);
+        existing.setUpdatedAt(now);
     }
 }
@@ -0,0 +1,101 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a createAll()/updateAll() call: the rows of every batch that committed, plus one
+ * failure entry for every batch that was rolled back.
+ */
+public class BatchResult<T> {
+
+    public static class BatchFailure<T> {
+        private final int batchIndex;
+        private final int firstOrdinal;
+        private final List<T> data;
+        private final RuntimeException cause;
+
+        public BatchFailure(int batchIndex, int firstOrdinal, List<T> data, RuntimeException cause) {
+            this.batchIndex = batchIndex;
+            this.firstOrdinal = firstOrdinal;
+            this.data = Collections.unmodifiableList(new ArrayList<>(data));
+            this.cause = cause;
+        }
+
+        /**
+         * Zero-based index of the failed batch.
+         */
+        public int getBatchIndex() {
+            return batchIndex;
+        }
+
+        /**
+         * Zero-based position of the batch's first row in the submitted collection.
+         */
+        public int getFirstOrdinal() {
+            return firstOrdinal;
+        }
+
+        /**
+         * The submitted rows of the failed batch, none of which were stored.
+         */
+        public List<T> getData() {
+            return data;
+        }
+
+        public RuntimeException getCause() {
+            return cause;
+        }
+    }
+
+    private final List<T> stored = new ArrayList<>();
+    private final List<BatchFailure<T>> failures = new ArrayList<>();
+    private int batchCount = 0;
+
+    public List<T> getStored() {
+        return Collections.unmodifiableList(stored);
+    }
+
+    public List<BatchFailure<T>> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    void addStored(List<T> batch) {
+        stored.addAll(batch);
+        batchCount++;
+    }
+
+    void addFailure(BatchFailure<T> failure) {
+        failures.add(failure);
+        batchCount++;
+    }
+}
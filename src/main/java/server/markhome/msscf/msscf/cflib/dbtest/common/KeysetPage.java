@@ -0,0 +1,100 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+/**
+ * One page of a keyset (seek) listing ordered by pid.  The next page is requested by passing
+ * getNextToken() back to the same listing; the token is an opaque encoding of the last pid returned, so
+ * every page costs one index range scan no matter how deep the listing goes.
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+    private final String nextToken;
+
+    public KeysetPage(List<T> content, String nextToken) {
+        this.content = Collections.unmodifiableList(new ArrayList<>(content));
+        this.nextToken = nextToken;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    /**
+     * Continuation token for the following page, or null when this is the last page.
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    public int size() {
+        return content.size();
+    }
+
+    /**
+     * Decodes a continuation token into the pid bytes to seek past; null or empty starts from the beginning.
+     */
+    public static byte[] decodeToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return new byte[0];
+        }
+        try {
+            return Base64.getUrlDecoder().decode(token);
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("KeysetPage.decodeToken() token '" + token + "' is not a valid continuation token", e);
+        }
+    }
+
+    public static String encodeToken(CFLibDbKeyHash256 pid) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(pid.getBytes());
+    }
+
+    /**
+     * Builds a page from rows fetched with a limit of pageSize + 1; the extra row only signals that another page exists.
+     */
+    public static <T> KeysetPage<T> of(List<T> fetched, int pageSize, Function<T, CFLibDbKeyHash256> key) {
+        if (fetched.size() <= pageSize) {
+            return new KeysetPage<>(fetched, null);
+        }
+        List<T> content = fetched.subList(0, pageSize);
+        return new KeysetPage<>(content, encodeToken(key.apply(content.get(pageSize - 1))));
+    }
+
+    public static void checkPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("KeysetPage pageSize must be positive, not " + pageSize);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Splits bulk writes into chunks of the silo's hibernate.jdbc.batch_size and runs each chunk in its own
+ * transaction, so one bad batch is reported without discarding the batches that already committed.
+ */
+public final class SiloBatches {
+
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * Changes a batch makes to the caller's rows, such as generated pids and timestamps; they are reverted,
+     * last first, when the batch rolls back, so the caller's objects are left as submitted.
+     */
+    public static final class Undo {
+        private final Deque<Runnable> reverts = new ArrayDeque<>();
+
+        private Undo() {
+        }
+
+        public void record(Runnable revert) {
+            reverts.push(revert);
+        }
+
+        private void revert() {
+            while (!reverts.isEmpty()) {
+                reverts.pop().run();
+            }
+        }
+    }
+
+    private SiloBatches() {
+    }
+
+    /**
+     * Resolves the JDBC batch size from a silo's effective JPA properties.
+     */
+    public static int batchSize(Properties jpaProperties) {
+        String value = jpaProperties != null ? jpaProperties.getProperty("hibernate.jdbc.batch_size") : null;
+        if (value == null || value.isEmpty()) {
+            return DEFAULT_BATCH_SIZE;
+        }
+        int size = Integer.parseInt(value.trim());
+        return size > 0 ? size : DEFAULT_BATCH_SIZE;
+    }
+
+    /**
+     * Runs work over data in batches of batchSize, each batch in a new transaction on transactionManager.
+     * The work function returns the stored rows for its batch.
+     */
+    public static <T> BatchResult<T> run(PlatformTransactionManager transactionManager, String operation,
+        Collection<T> data, int batchSize, Function<List<T>, List<T>> work)
+    {
+        return run(transactionManager, operation, data, batchSize, (batch, undo) -> work.apply(batch));
+    }
+
+    /**
+     * As run(), but work also records with the batch's Undo how to restore any caller row it changes.
+     */
+    public static <T> BatchResult<T> run(PlatformTransactionManager transactionManager, String operation,
+        Collection<T> data, int batchSize, BiFunction<List<T>, Undo, List<T>> work)
+    {
+        BatchResult<T> result = new BatchResult<>();
+        if (data == null || data.isEmpty()) {
+            return result;
+        }
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // Tags the batches' transaction meters with the operation rather than SiloMetrics.NO_METHOD
+        template.setName(operation);
+
+        List<T> batch = new ArrayList<>(batchSize);
+        int batchIndex = 0;
+        int firstOrdinal = 0;
+        int ordinal = 0;
+        for (T row : data) {
+            if (row == null) {
+                ordinal++;
+                continue;
+            }
+            if (batch.isEmpty()) {
+                firstOrdinal = ordinal;
+            }
+            batch.add(row);
+            ordinal++;
+            if (batch.size() >= batchSize) {
+                runBatch(template, operation, batchIndex++, firstOrdinal, batch, work, result);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            runBatch(template, operation, batchIndex, firstOrdinal, batch, work, result);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the keys of a batch so existence can be probed with one findAllById() per batch.
+     */
+    public static <K, T> List<K> keysOf(Collection<T> batch, Function<T, K> key) {
+        List<K> keys = new ArrayList<>(batch.size());
+        for (T row : batch) {
+            keys.add(key.apply(row));
+        }
+        return keys;
+    }
+
+    public static <K, T> Map<K, T> indexBy(Iterable<? extends T> rows, Function<T, K> key) {
+        Map<K, T> index = new HashMap<>();
+        for (T row : rows) {
+            index.put(key.apply(row), row);
+        }
+        return index;
+    }
+
+    private static <T> void runBatch(TransactionTemplate template, String operation, int batchIndex, int firstOrdinal,
+        List<T> batch, BiFunction<List<T>, Undo, List<T>> work, BatchResult<T> result)
+    {
+        Undo undo = new Undo();
+        try {
+            List<T> stored = template.execute((status) -> work.apply(batch, undo));
+            result.addStored(stored != null ? stored : new ArrayList<>());
+        } catch (RuntimeException e) {
+            undo.revert();
+            System.err.println("ERROR: " + operation + " batch " + batchIndex + " (rows " + firstOrdinal + ".." + (firstOrdinal + batch.size() - 1) +
+                ") rolled back after " + e.getClass().getCanonicalName() + " - " + e.getMessage());
+            result.addFailure(new BatchResult.BatchFailure<>(batchIndex, firstOrdinal, batch, e));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+/**
+ * Builds the silos' EntityManagerFactories in the background, one daemon thread per silo, so their metadata
+ * building, schema migrations and connection acquisition overlap with each other and with the rest of the context.
+ * Once every expected silo has finished it reports how long each took and the wall time saved compared with
+ * building them one after another.
+ */
+public class SiloBootstrap {
+
+    private final int expected;
+    private final boolean enabled;
+    private final Map<String, Long> elapsedMs = new ConcurrentHashMap<>();
+    private final AtomicLong firstStartNanos = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastEndNanos = new AtomicLong(Long.MIN_VALUE);
+
+    public SiloBootstrap(int expected) {
+        this(expected, true);
+    }
+
+    /**
+     * When enabled is false (silos.background-bootstrap=false) each silo's EntityManagerFactory is built on the
+     * thread that first requests it, as Spring normally does.
+     */
+    public SiloBootstrap(int expected, boolean enabled) {
+        this.expected = expected;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The bootstrap executor for silo's LocalContainerEntityManagerFactoryBean.  prepare, when given, runs on the
+     * same thread just before the Hibernate build (e.g. the silo's schema migrations); if it fails, the build is
+     * abandoned and the failure surfaces on the EntityManagerFactory's first use.
+     */
+    public AsyncTaskExecutor executor(SiloDefinition silo, Runnable prepare) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(silo.getName() + "-bootstrap-") {
+            @Override
+            public <T> Future<T> submit(Callable<T> task) {
+                return super.submit(() -> build(silo, prepare, task));
+            }
+        };
+        executor.setDaemon(true);
+        return executor;
+    }
+
+    /**
+     * Each finished silo's bootstrap time in milliseconds, keyed by silo name.
+     */
+    public Map<String, Long> getElapsedMs() {
+        return elapsedMs;
+    }
+
+    private <T> T build(SiloDefinition silo, Runnable prepare, Callable<T> task) throws Exception {
+        long start = System.nanoTime();
+        firstStartNanos.accumulateAndGet(start, Math::min);
+        try {
+            if (prepare != null) {
+                prepare.run();
+            }
+            return task.call();
+        }
+        catch (Exception e) {
+            System.err.println("ERROR: SiloBootstrap could not build the " + silo.getName() + " EntityManagerFactory - " + e.getMessage());
+            e.printStackTrace(System.err);
+            throw e;
+        }
+        finally {
+            long end = System.nanoTime();
+            lastEndNanos.accumulateAndGet(end, Math::max);
+            finished(silo, TimeUnit.NANOSECONDS.toMillis(end - start));
+        }
+    }
+
+    private void finished(SiloDefinition silo, long ms) {
+        System.err.println("SiloBootstrap built " + silo.getName() + " EntityManagerFactory in " + ms + " ms");
+        elapsedMs.put(silo.getName(), ms);
+        if (elapsedMs.size() == expected) {
+            long serialMs = 0L;
+            for (long each : elapsedMs.values()) {
+                serialMs += each;
+            }
+            long wallMs = TimeUnit.NANOSECONDS.toMillis(lastEndNanos.get() - firstStartNanos.get());
+            System.err.println("SiloBootstrap built " + expected + " EntityManagerFactories in " + wallMs + " ms wall time; built one after another they took "
+                + serialMs + " ms, so background bootstrap saved " + Math.max(0L, serialMs - wallMs) + " ms");
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.net.URI;
+import java.util.OptionalLong;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+
+/**
+ * Builds the per-silo JCache (Caffeine) CacheManager handed to Hibernate's second-level cache through
+ * hibernate.javax.cache.cache_manager.  Each region is created up front, sized from
+ * <silo>.cache.<region>.max-entries and ttl-seconds, falling back to <silo>.cache.default.* and then
+ * cache.default.*; a value of 0 leaves the region unbounded or non-expiring.
+ */
+public final class SiloCaches {
+
+    public static final String DEFAULT_CACHING_PROVIDER = "com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider";
+
+    /** Hibernate's default region names for cached query results and table update timestamps. */
+    public static final String QUERY_RESULTS_REGION = "default-query-results-region";
+    public static final String UPDATE_TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    public static final String DEFAULT_MAX_ENTRIES = "10000";
+    public static final String DEFAULT_TTL_SECONDS = "300";
+
+    private SiloCaches() {
+    }
+
+    /**
+     * Returns the silo's CacheManager with every listed region created.  Hibernate qualifies region names
+     * as <regionPrefix>.<region>, so the caches are created under those names.
+     */
+    public static CacheManager cacheManager(Properties merged, String silo, String regionPrefix, String... regions) {
+        String providerClass = merged.getProperty(silo + ".hibernate.javax.cache.provider",
+            merged.getProperty("hibernate.javax.cache.provider", DEFAULT_CACHING_PROVIDER));
+        CachingProvider provider = Caching.getCachingProvider(providerClass);
+        CacheManager manager = provider.getCacheManager(URI.create("dbtest:" + silo), SiloCaches.class.getClassLoader());
+        for (String region : regions) {
+            String cacheName = regionPrefix != null && !regionPrefix.isEmpty() ? regionPrefix + "." + region : region;
+            if (manager.getCache(cacheName) == null) {
+                manager.createCache(cacheName, configuration(merged, silo, region));
+            }
+        }
+        return manager;
+    }
+
+    private static CaffeineConfiguration<Object, Object> configuration(Properties merged, String silo, String region) {
+        // Update timestamps must outlive every cached query result, so that region defaults to unbounded
+        boolean timestamps = UPDATE_TIMESTAMPS_REGION.equals(region);
+        long maxEntries = Long.parseLong(setting(merged, silo, region, "max-entries", timestamps ? "0" : DEFAULT_MAX_ENTRIES));
+        long ttlSeconds = Long.parseLong(setting(merged, silo, region, "ttl-seconds", timestamps ? "0" : DEFAULT_TTL_SECONDS));
+
+        CaffeineConfiguration<Object, Object> config = new CaffeineConfiguration<>();
+        config.setStatisticsEnabled(true);
+        if (maxEntries > 0) {
+            config.setMaximumSize(OptionalLong.of(maxEntries));
+        }
+        if (ttlSeconds > 0) {
+            config.setExpireAfterWrite(OptionalLong.of(TimeUnit.SECONDS.toNanos(ttlSeconds)));
+        }
+        return config;
+    }
+
+    private static String setting(Properties merged, String silo, String region, String key, String defaultValue) {
+        return merged.getProperty(silo + ".cache." + region + "." + key,
+            merged.getProperty(silo + ".cache.default." + key,
+                merged.getProperty("cache.default." + key, defaultValue))).trim();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+
+/**
+ * An immutable snapshot of the merged properties and every silo's SiloSettings, built once from
+ * DbTest.getMergedProperties() so beans read typed values instead of re-parsing property strings.
+ * reload() publishes a new snapshot after ~/.dbtest.properties changes; holders of an older snapshot keep
+ * seeing consistent, if stale, values.
+ */
+public final class SiloConfig {
+
+    private static final AtomicReference<SiloConfig> current = new AtomicReference<>(null);
+
+    private final long version;
+    private final Map<String, String> properties;
+    private final Map<String, SiloSettings> silos;
+
+    private SiloConfig(long version, Properties merged) {
+        this.version = version;
+        Map<String, String> copy = new LinkedHashMap<>();
+        for (String key : merged.stringPropertyNames()) {
+            copy.put(key, merged.getProperty(key));
+        }
+        this.properties = Collections.unmodifiableMap(copy);
+        Map<String, SiloSettings> settings = new LinkedHashMap<>();
+        for (SiloDefinition silo : SiloDefinition.fromProperties(merged)) {
+            settings.put(silo.getName(), SiloSettings.from(merged, silo));
+        }
+        this.silos = Collections.unmodifiableMap(settings);
+    }
+
+    /**
+     * The current snapshot, built from the merged properties on first use.
+     */
+    public static SiloConfig current() {
+        if (current.get() == null) {
+            current.compareAndSet(null, new SiloConfig(1L, DbTest.getMergedProperties()));
+        }
+        return current.get();
+    }
+
+    /**
+     * Re-reads ~/.dbtest.properties and publishes a new snapshot, which it returns.  Settings that fail
+     * validation throw IllegalArgumentException and leave the current snapshot in place.
+     */
+    public static synchronized SiloConfig reload() {
+        SiloConfig previous = current();
+        Properties merged = DbTest.readMergedProperties();
+        if (merged == null) {
+            return previous;
+        }
+        SiloConfig next = new SiloConfig(previous.version + 1L, merged);
+        DbTest.setMergedProperties(merged);
+        current.set(next);
+        return next;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public String getProperty(String key, String defaultValue) {
+        String value = properties.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public Collection<SiloSettings> getSilos() {
+        return silos.values();
+    }
+
+    public SiloSettings silo(String name) {
+        SiloSettings settings = silos.get(name);
+        if (settings == null) {
+            throw new IllegalArgumentException(SiloDefinition.SILOS_KEY + " does not list a silo named " + name);
+        }
+        return settings;
+    }
+}
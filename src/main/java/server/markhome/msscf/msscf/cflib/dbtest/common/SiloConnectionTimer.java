@@ -0,0 +1,101 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Wraps one of a silo's pools to record, per service method (see SiloTransactionManager.currentMethod), how long
+ * each getConnection() waited and how long the connection was held before being closed back into the pool.
+ */
+public class SiloConnectionTimer extends DelegatingDataSource {
+
+    private final String silo;
+    private final String pool;
+    private final Map<String, Timer> waits = new ConcurrentHashMap<>();
+    private final Map<String, Timer> holds = new ConcurrentHashMap<>();
+
+    public SiloConnectionTimer(String silo, String pool, DataSource target) {
+        super(target);
+        this.silo = silo;
+        this.pool = pool;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        return timed(obtainTargetDataSource().getConnection(), start);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        return timed(obtainTargetDataSource().getConnection(username, password), start);
+    }
+
+    private Connection timed(Connection conn, long requestedNanos) {
+        long acquiredNanos = System.nanoTime();
+        String method = SiloTransactionManager.currentMethod(silo);
+        timer(waits, SiloMetrics.CONNECTION_WAIT, "Time waiting for the pool to hand out a connection", method)
+            .record(acquiredNanos - requestedNanos, TimeUnit.NANOSECONDS);
+        Timer hold = timer(holds, SiloMetrics.CONNECTION_HOLD, "Time a connection was held before returning to the pool", method);
+        boolean[] closed = { false };
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, invoked, args) -> {
+                switch (invoked.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "close":
+                        if (!closed[0]) {
+                            closed[0] = true;
+                            hold.record(System.nanoTime() - acquiredNanos, TimeUnit.NANOSECONDS);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                try {
+                    return invoked.invoke(conn, args);
+                }
+                catch (InvocationTargetException e) {
+                    throw e.getTargetException();
+                }
+            });
+    }
+
+    private Timer timer(Map<String, Timer> timers, String name, String description, String method) {
+        return timers.computeIfAbsent(method, (key) -> SiloMetrics.timer(name, description, "silo", silo, "pool", pool, "method", key));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * One data silo as declared in the merged properties: silos lists the silo names, and for each name
+ * <silo>.silo.package, persistence-unit, bean-prefix, primary, lazy and cache-regions describe it.
+ * The schema comes from <silo>.hibernate.default_schema and the pool from <silo>.hikari.*.
+ */
+public final class SiloDefinition {
+
+    public static final String SILOS_KEY = "silos";
+
+    private final String name;
+    private final String packageName;
+    private final String persistenceUnit;
+    private final String beanPrefix;
+    private final String schema;
+    private final boolean primary;
+    private final boolean lazy;
+    private final List<String> cacheRegions;
+
+    public SiloDefinition(String name, String packageName, String persistenceUnit, String beanPrefix, String schema,
+        boolean primary, boolean lazy, List<String> cacheRegions)
+    {
+        this.name = name;
+        this.packageName = packageName;
+        this.persistenceUnit = persistenceUnit;
+        this.beanPrefix = beanPrefix;
+        this.schema = schema;
+        this.primary = primary;
+        this.lazy = lazy;
+        this.cacheRegions = Collections.unmodifiableList(new ArrayList<>(cacheRegions));
+    }
+
+    /**
+     * Every silo named by the silos property, in the order listed.
+     */
+    public static List<SiloDefinition> fromProperties(Properties merged) {
+        List<SiloDefinition> silos = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        Set<String> prefixes = new HashSet<>();
+        Set<String> units = new HashSet<>();
+        boolean hasPrimary = false;
+        for (String name : split(merged.getProperty(SILOS_KEY, ""))) {
+            String packageName = setting(merged, name, "package", "");
+            if (packageName.isEmpty()) {
+                throw new IllegalArgumentException(name + ".silo.package is required for every silo listed in " + SILOS_KEY);
+            }
+            SiloDefinition silo = new SiloDefinition(name, packageName,
+                setting(merged, name, "persistence-unit", name),
+                setting(merged, name, "bean-prefix", name),
+                merged.getProperty(name + ".hibernate.default_schema", name).trim(),
+                Boolean.parseBoolean(setting(merged, name, "primary", "false")),
+                Boolean.parseBoolean(setting(merged, name, "lazy", "false")),
+                split(setting(merged, name, "cache-regions", "")));
+            if (!names.add(silo.getName())) {
+                throw new IllegalArgumentException(SILOS_KEY + " lists silo " + name + " twice");
+            }
+            if (!prefixes.add(silo.getBeanPrefix())) {
+                throw new IllegalArgumentException(name + ".silo.bean-prefix " + silo.getBeanPrefix() + " is used by another silo");
+            }
+            if (!units.add(silo.getPersistenceUnit())) {
+                throw new IllegalArgumentException(name + ".silo.persistence-unit " + silo.getPersistenceUnit() + " is used by another silo");
+            }
+            if (silo.isPrimary()) {
+                if (hasPrimary) {
+                    throw new IllegalArgumentException(name + ".silo.primary is set, but another silo is already primary");
+                }
+                hasPrimary = true;
+            }
+            silos.add(silo);
+        }
+        if (silos.isEmpty()) {
+            throw new IllegalArgumentException(SILOS_KEY + " must list at least one data silo");
+        }
+        return silos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getPersistenceUnit() {
+        return persistenceUnit;
+    }
+
+    public String getBeanPrefix() {
+        return beanPrefix;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public boolean isPrimary() {
+        return primary;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public List<String> getCacheRegions() {
+        return cacheRegions;
+    }
+
+    /**
+     * The silo's bean of the given kind, e.g. beanName("DataSource") is secDataSource for bean prefix sec.
+     */
+    public String beanName(String suffix) {
+        return beanPrefix + suffix;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + packageName + ", " + persistenceUnit + ")";
+    }
+
+    private static String setting(Properties merged, String name, String key, String defaultValue) {
+        return merged.getProperty(name + ".silo." + key, defaultValue).trim();
+    }
+
+    private static List<String> split(String list) {
+        List<String> items = new ArrayList<>();
+        for (String item : list.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.jmx.JmxConfig;
+import io.micrometer.jmx.JmxMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+
+/**
+ * The process-wide MeterRegistry the silo instrumentation records to, and the names of the per-silo meters.
+ * It is created on first use, so SiloRegistry's static bean factories can reach it before the Spring
+ * context exists; SiloMetricsConfig exposes it as the meterRegistry bean.  Every meter is kept in Prometheus
+ * form (see prometheus()) and, unless metrics.jmx.enabled is false, published as MBeans under the metrics domain.
+ */
+public final class SiloMetrics {
+
+    /** Physical transaction duration, tagged silo, method and outcome. */
+    public static final String TRANSACTION_DURATION = "dbtest.transaction.duration";
+    /** Physical transactions already open on the thread when one begins, tagged silo and method. */
+    public static final String TRANSACTION_NESTED = "dbtest.transaction.nested";
+    /** Open transactions of other silos, each holding its own pool's connection, when one begins. */
+    public static final String TRANSACTION_CROSS_SILO = "dbtest.transaction.cross.silo";
+    /** Time spent waiting for a pool to hand out a connection, tagged silo, pool and method. */
+    public static final String CONNECTION_WAIT = "dbtest.connection.wait";
+    /** Time from a connection leaving its pool until it is returned, tagged silo, pool and method. */
+    public static final String CONNECTION_HOLD = "dbtest.connection.hold";
+
+    /** The method tag of work done outside any silo transaction, e.g. warm-ups and migrations. */
+    public static final String NO_METHOD = "none";
+
+    public static final String JMX_ENABLED_KEY = "metrics.jmx.enabled";
+
+    private static final AtomicReference<PrometheusMeterRegistry> prometheus = new AtomicReference<>(null);
+    private static final AtomicReference<MeterRegistry> registry = new AtomicReference<>(null);
+
+    private SiloMetrics() {
+    }
+
+    public static MeterRegistry registry() {
+        if (registry.get() == null) {
+            CompositeMeterRegistry composite = new CompositeMeterRegistry();
+            composite.add(prometheus());
+            if (Boolean.parseBoolean(SiloConfig.current().getProperty(JMX_ENABLED_KEY, "true").trim())) {
+                composite.add(new JmxMeterRegistry(JmxConfig.DEFAULT, Clock.SYSTEM));
+            }
+            if (!registry.compareAndSet(null, composite)) {
+                composite.close();
+            }
+        }
+        return registry.get();
+    }
+
+    /**
+     * The registry behind registry() that renders every meter in the Prometheus text format, via scrape().
+     */
+    public static PrometheusMeterRegistry prometheus() {
+        if (prometheus.get() == null) {
+            PrometheusMeterRegistry created = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            if (!prometheus.compareAndSet(null, created)) {
+                created.close();
+            }
+        }
+        return prometheus.get();
+    }
+
+    /**
+     * A latency histogram bounded to the range pool waits and transactions plausibly take.
+     */
+    public static Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+            .description(description)
+            .tags(tags)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofNanos(100000L))
+            .maximumExpectedValue(Duration.ofMinutes(2L))
+            .register(registry());
+    }
+
+    public static DistributionSummary summary(String name, String description, String... tags) {
+        return DistributionSummary.builder(name)
+            .description(description)
+            .tags(tags)
+            .publishPercentileHistogram()
+            .maximumExpectedValue(16.0)
+            .register(registry());
+    }
+
+    /**
+     * Prints the count, mean and maximum of every dbtest.* meter recorded so far.
+     */
+    public static void report(String title) {
+        System.err.println(title);
+        for (Meter meter : registry().getMeters()) {
+            Meter.Id id = meter.getId();
+            if (!id.getName().startsWith("dbtest.")) {
+                continue;
+            }
+            StringBuilder line = new StringBuilder("    ").append(id.getName());
+            for (Tag tag : id.getTags()) {
+                line.append(' ').append(tag.getKey()).append('=').append(tag.getValue());
+            }
+            if (meter instanceof Timer timer) {
+                line.append(String.format(": count=%d mean=%.3f ms max=%.3f ms", timer.count(),
+                    timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS)));
+            }
+            else if (meter instanceof DistributionSummary summary) {
+                line.append(String.format(": count=%d mean=%.2f max=%.0f", summary.count(), summary.mean(), summary.max()));
+            }
+            System.err.println(line);
+        }
+    }
+
+    /**
+     * Shortens a transaction name such as server...secdb.SecDbUserService.find to SecDbUserService.find.
+     */
+    public static String methodName(String transactionName) {
+        if (transactionName == null || transactionName.isEmpty()) {
+            return NO_METHOD;
+        }
+        int method = transactionName.lastIndexOf('.');
+        int type = method > 0 ? transactionName.lastIndexOf('.', method - 1) : -1;
+        return type >= 0 ? transactionName.substring(type + 1) : transactionName;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+/**
+ * Applies a silo's versioned schema scripts, classpath:db/migration/<silo>/V<version>__<description>.sql, in
+ * version order and records each in <schema>.schema_history with the SHA-256 checksum of its statements and
+ * dialect; other comments and blank lines are left out, so an applied script's notes may still be amended.
+ * A history recorded with the checksum of the whole text is accepted as long as that text is unchanged.  When
+ * every script has been recorded the run ends after one history query, without touching the catalog; a recorded
+ * script whose statements have since changed, or has gone missing, fails startup with an IllegalStateException.
+ *
+ * A script runs in a single transaction unless it uses ${concurrently}, which becomes CONCURRENTLY on PostgreSQL
+ * (and nothing elsewhere); such scripts run one auto-committed statement at a time, since PostgreSQL cannot build
+ * an index concurrently inside a transaction.  Should such a script fail part way, its next run drops and
+ * rebuilds any index the failed build left INVALID.  A script whose first line is "-- dialect: postgresql" is only
+ * run on PostgreSQL; elsewhere it is recorded as skipped.  Statements end with a semicolon at the end of a line.
+ */
+public final class SiloMigrator {
+
+    public static final String LOCATION = "db/migration/";
+    public static final String HISTORY_TABLE = "schema_history";
+    public static final String CONCURRENTLY_PLACEHOLDER = "${concurrently}";
+    public static final String DIALECT_MARKER = "-- dialect:";
+
+    private static final Pattern SCRIPT_NAME = Pattern.compile("V(\\d+)__(.+)\\.sql");
+
+    private static final Pattern CONCURRENT_INDEX = Pattern.compile(
+        "CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+CONCURRENTLY\\s+IF\\s+NOT\\s+EXISTS\\s+(\\w+)\\s+ON\\s+(?:(\\w+)\\.)?\\w+",
+        Pattern.CASE_INSENSITIVE);
+
+    private static final String INVALID_INDEX =
+        "SELECT NOT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid JOIN pg_namespace n ON n.oid = c.relnamespace "
+        + "WHERE n.nspname = ? AND c.relname = ?";
+
+    private SiloMigrator() {
+    }
+
+    public static boolean isEnabled(Properties merged, String silo) {
+        return Boolean.parseBoolean(merged.getProperty(silo + ".migrations.enabled", merged.getProperty("migrations.enabled", "true")).trim());
+    }
+
+    /**
+     * Brings silo's schema up to its latest script, returning the number of scripts applied or skipped.
+     */
+    public static int migrate(SiloDefinition silo, DataSource dataSource, Properties merged) {
+        long start = System.currentTimeMillis();
+        Map<Integer, Script> scripts = scripts(silo.getName());
+        boolean postgreSQL = SiloNativeSql.isPostgreSQL(merged.getProperty(silo.getName() + ".hibernate.dialect", merged.getProperty("hibernate.dialect", "")));
+        String history = silo.getSchema() + "." + HISTORY_TABLE;
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(true);
+            try {
+                Map<Integer, String> applied = applied(conn, silo.getSchema(), history);
+                if (applied == null) {
+                    createHistory(conn, silo.getSchema(), history);
+                    applied = new TreeMap<>();
+                }
+                if (pending(silo, scripts, applied).isEmpty()) {
+                    System.err.println("SiloMigrator " + silo.getName() + " schema is up to date at version " + latest(applied)
+                        + ", checked in " + (System.currentTimeMillis() - start) + " ms");
+                    return 0;
+                }
+                if (postgreSQL) {
+                    // Serializes concurrent instances; the winner's work is visible to the others once they re-read the history
+                    execute(conn, "SELECT pg_advisory_lock(" + lockKey(history) + ")");
+                }
+                try {
+                    applied = applied(conn, silo.getSchema(), history);
+                    List<Script> pending = pending(silo, scripts, applied);
+                    for (Script script : pending) {
+                        apply(conn, silo.getSchema(), history, script, postgreSQL);
+                    }
+                    System.err.println("SiloMigrator " + silo.getName() + " migrated to version " + latest(scripts)
+                        + " with " + pending.size() + " scripts in " + (System.currentTimeMillis() - start) + " ms");
+                    return pending.size();
+                }
+                finally {
+                    if (postgreSQL) {
+                        execute(conn, "SELECT pg_advisory_unlock(" + lockKey(history) + ")");
+                    }
+                }
+            }
+            finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        catch (SQLException e) {
+            throw new IllegalStateException("SiloMigrator could not migrate " + silo.getName() + " - " + e.getMessage(), e);
+        }
+    }
+
+    private static final class Script {
+        final int version;
+        final String description;
+        final String text;
+        final String checksum;
+        // The checksum of the whole text, as recorded before comments were left out
+        final String textChecksum;
+
+        Script(int version, String description, String text) {
+            this.version = version;
+            this.description = description;
+            this.text = text;
+            String dialect = dialect();
+            this.checksum = sha256((dialect != null ? DIALECT_MARKER + dialect + "\n" : "")
+                + String.join(";\n", statements(CONCURRENTLY_PLACEHOLDER)));
+            this.textChecksum = sha256(text);
+        }
+
+        String dialect() {
+            String firstLine = text.lines().findFirst().orElse("").trim();
+            return firstLine.startsWith(DIALECT_MARKER) ? firstLine.substring(DIALECT_MARKER.length()).trim() : null;
+        }
+
+        List<String> statements(String concurrently) {
+            List<String> statements = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            for (String line : text.replace(CONCURRENTLY_PLACEHOLDER, concurrently).lines().toList()) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                current.append(line).append('\n');
+                if (trimmed.endsWith(";")) {
+                    String sql = current.toString().trim();
+                    statements.add(sql.substring(0, sql.length() - 1));
+                    current.setLength(0);
+                }
+            }
+            if (!current.toString().trim().isEmpty()) {
+                statements.add(current.toString().trim());
+            }
+            return statements;
+        }
+    }
+
+    private static Map<Integer, Script> scripts(String silo) {
+        Map<Integer, Script> scripts = new TreeMap<>();
+        try {
+            Resource[] resources = new PathMatchingResourcePatternResolver(SiloMigrator.class.getClassLoader())
+                .getResources("classpath*:" + LOCATION + silo + "/V*__*.sql");
+            for (Resource resource : resources) {
+                Matcher matcher = SCRIPT_NAME.matcher(resource.getFilename());
+                if (!matcher.matches()) {
+                    throw new IllegalStateException("SiloMigrator cannot parse the version of " + LOCATION + silo + "/" + resource.getFilename());
+                }
+                int version = Integer.parseInt(matcher.group(1));
+                String text;
+                try (InputStream in = resource.getInputStream()) {
+                    // Checksums ignore line-ending conversions made by checkouts on other platforms
+                    text = new String(in.readAllBytes(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+                }
+                Script script = new Script(version, matcher.group(2).replace('_', ' '), text);
+                if (scripts.put(version, script) != null) {
+                    throw new IllegalStateException("SiloMigrator found two " + LOCATION + silo + " scripts for version " + version);
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("SiloMigrator could not read the " + LOCATION + silo + " scripts - " + e.getMessage(), e);
+        }
+        return scripts;
+    }
+
+    /**
+     * The recorded checksum of each applied version, or null when the history table does not exist yet.  Any other
+     * failure to read the history is thrown rather than mistaken for a fresh schema.
+     */
+    private static Map<Integer, String> applied(Connection conn, String schema, String history) throws SQLException {
+        if (!tableExists(conn, schema, HISTORY_TABLE)) {
+            return null;
+        }
+        Map<Integer, String> applied = new TreeMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM " + history))
+        {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+        return applied;
+    }
+
+    private static boolean tableExists(Connection conn, String schema, String table) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        // Unquoted names are folded to the catalog's case
+        if (meta.storesUpperCaseIdentifiers()) {
+            schema = schema.toUpperCase();
+            table = table.toUpperCase();
+        }
+        else if (meta.storesLowerCaseIdentifiers()) {
+            schema = schema.toLowerCase();
+            table = table.toLowerCase();
+        }
+        try (ResultSet rs = meta.getTables(null, schema, table, new String[] { "TABLE" })) {
+            return rs.next();
+        }
+    }
+
+    private static List<Script> pending(SiloDefinition silo, Map<Integer, Script> scripts, Map<Integer, String> applied) {
+        for (Map.Entry<Integer, String> entry : applied.entrySet()) {
+            Script script = scripts.get(entry.getKey());
+            if (script == null) {
+                throw new IllegalStateException("SiloMigrator " + silo.getName() + " version " + entry.getKey() + " was applied but its script is missing");
+            }
+            if (!script.checksum.equals(entry.getValue()) && !script.textChecksum.equals(entry.getValue())) {
+                throw new IllegalStateException("SiloMigrator " + silo.getName() + " script V" + script.version + "__" + script.description.replace(' ', '_')
+                    + ".sql has changed since it was applied; add a new version instead of editing it");
+            }
+        }
+        int latestApplied = latest(applied);
+        List<Script> pending = new ArrayList<>();
+        for (Script script : scripts.values()) {
+            if (!applied.containsKey(script.version)) {
+                if (script.version < latestApplied) {
+                    throw new IllegalStateException("SiloMigrator " + silo.getName() + " script version " + script.version
+                        + " is older than the applied version " + latestApplied);
+                }
+                pending.add(script);
+            }
+        }
+        return pending;
+    }
+
+    private static void createHistory(Connection conn, String schema, String history) throws SQLException {
+        execute(conn, "CREATE SCHEMA IF NOT EXISTS " + schema);
+        execute(conn, "CREATE TABLE IF NOT EXISTS " + history + " ("
+            + "version integer NOT NULL, "
+            + "description varchar(200) NOT NULL, "
+            + "checksum varchar(64) NOT NULL, "
+            + "applied boolean NOT NULL, "
+            + "installed_at timestamp NOT NULL, "
+            + "execution_ms bigint NOT NULL, "
+            + "CONSTRAINT " + HISTORY_TABLE + "_pk PRIMARY KEY (version))");
+    }
+
+    private static void apply(Connection conn, String schema, String history, Script script, boolean postgreSQL) throws SQLException {
+        long start = System.currentTimeMillis();
+        String dialect = script.dialect();
+        boolean run = dialect == null || ("postgresql".equalsIgnoreCase(dialect) && postgreSQL);
+        if (!run) {
+            record(conn, history, script, false, 0L);
+            System.err.println("SiloMigrator skipped V" + script.version + " " + script.description + ", which is for " + dialect + " only");
+            return;
+        }
+        if (script.text.contains(CONCURRENTLY_PLACEHOLDER)) {
+            for (String sql : script.statements(postgreSQL ? "CONCURRENTLY" : "")) {
+                if (postgreSQL) {
+                    dropInvalidIndex(conn, schema, sql);
+                }
+                execute(conn, sql);
+            }
+            record(conn, history, script, true, System.currentTimeMillis() - start);
+        }
+        else {
+            conn.setAutoCommit(false);
+            try {
+                for (String sql : script.statements("")) {
+                    execute(conn, sql);
+                }
+                record(conn, history, script, true, System.currentTimeMillis() - start);
+                conn.commit();
+            }
+            catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            }
+            finally {
+                conn.setAutoCommit(true);
+            }
+        }
+        System.err.println("SiloMigrator applied V" + script.version + " " + script.description + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * A CREATE INDEX CONCURRENTLY that failed part way leaves an INVALID index behind, which IF NOT EXISTS would
+     * then skip for good; drop it so that sql builds it again.
+     */
+    private static void dropInvalidIndex(Connection conn, String schema, String sql) throws SQLException {
+        Matcher matcher = CONCURRENT_INDEX.matcher(sql);
+        if (!matcher.find()) {
+            return;
+        }
+        String index = matcher.group(1).toLowerCase();
+        String indexSchema = matcher.group(2) != null ? matcher.group(2).toLowerCase() : schema.toLowerCase();
+        boolean invalid;
+        try (PreparedStatement stmt = conn.prepareStatement(INVALID_INDEX)) {
+            stmt.setString(1, indexSchema);
+            stmt.setString(2, index);
+            try (ResultSet rs = stmt.executeQuery()) {
+                invalid = rs.next() && rs.getBoolean(1);
+            }
+        }
+        if (invalid) {
+            System.err.println("SiloMigrator dropping invalid index " + indexSchema + "." + index + " left by an interrupted build");
+            execute(conn, "DROP INDEX CONCURRENTLY IF EXISTS " + indexSchema + "." + index);
+        }
+    }
+
+    private static void record(Connection conn, String history, Script script, boolean applied, long executionMs) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + history
+            + " (version, description, checksum, applied, installed_at, execution_ms) VALUES (?, ?, ?, ?, ?, ?)"))
+        {
+            stmt.setInt(1, script.version);
+            stmt.setString(2, script.description);
+            stmt.setString(3, script.checksum);
+            stmt.setBoolean(4, applied);
+            stmt.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+            stmt.setLong(6, executionMs);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static int latest(Map<Integer, ?> versions) {
+        int latest = 0;
+        for (int version : versions.keySet()) {
+            latest = Math.max(latest, version);
+        }
+        return latest;
+    }
+
+    private static long lockKey(String history) {
+        return history.hashCode();
+    }
+
+    private static String sha256(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
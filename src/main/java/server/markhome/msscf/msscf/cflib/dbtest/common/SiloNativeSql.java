@@ -0,0 +1,91 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.time.LocalDateTime;
+import java.util.Properties;
+
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+
+import jakarta.persistence.EntityManager;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+/**
+ * Helpers for the handful of native statements the repository fragments issue.  Parameters are bound
+ * with explicit types so that null keys and timestamps reach PostgreSQL as bytea/timestamp rather than
+ * as untyped nulls.  Statements name their tables as {h-schema}<table>, which Hibernate expands to the
+ * silo's hibernate.default_schema.
+ */
+public final class SiloNativeSql {
+
+    private SiloNativeSql() {
+    }
+
+    /**
+     * Whether the silo's create() should use the single-statement INSERT ... ON CONFLICT (pid) DO NOTHING path.
+     * The <silo>.create.insert-if-absent property (falling back to create.insert-if-absent) accepts
+     * true, false or auto; auto enables it only for PostgreSQL dialects.
+     */
+    public static boolean isInsertIfAbsentEnabled(Properties merged, String silo) {
+        String mode = merged.getProperty(silo + ".create.insert-if-absent", merged.getProperty("create.insert-if-absent", "auto")).trim();
+        if ("auto".equalsIgnoreCase(mode)) {
+            return isPostgreSQL(merged.getProperty(silo + ".hibernate.dialect", merged.getProperty("hibernate.dialect", "")));
+        }
+        return Boolean.parseBoolean(mode);
+    }
+
+    public static boolean isPostgreSQL(String dialect) {
+        return dialect != null && dialect.contains("PostgreSQL");
+    }
+
+    @SuppressWarnings("unchecked")
+    public static NativeQuery<Object> statement(EntityManager em, String sql, Class<?> synchronizedEntity) {
+        NativeQuery<Object> query = em.createNativeQuery(sql).unwrap(NativeQuery.class);
+        // Only invalidate the regions of the entity being written, not every cache region
+        query.addSynchronizedEntityClass(synchronizedEntity);
+        return query;
+    }
+
+    public static void bindKey(NativeQuery<?> query, String name, CFLibDbKeyHash256 key) {
+        query.setParameter(name, key != null ? key.getBytes() : null, StandardBasicTypes.BINARY);
+    }
+
+    /**
+     * Converts a binary pid column of a native result row back into a key; null stays null.
+     */
+    public static CFLibDbKeyHash256 toKey(Object column) {
+        return column != null ? new CFLibDbKeyHash256((byte[])column) : null;
+    }
+
+    public static void bindString(NativeQuery<?> query, String name, String value) {
+        query.setParameter(name, value, StandardBasicTypes.STRING);
+    }
+
+    public static void bindTimestamp(NativeQuery<?> query, String name, LocalDateTime value) {
+        query.setParameter(name, value, StandardBasicTypes.LOCAL_DATE_TIME);
+    }
+
+    public static void bindInteger(NativeQuery<?> query, String name, int value) {
+        query.setParameter(name, value, StandardBasicTypes.INTEGER);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+/**
+ * Builds the bulk UPDATE ... SET <changed columns> WHERE pid = ? behind the services' patch() methods, without
+ * reading the row first.  For the single-table entities that is one UPDATE statement; for the JOINED SecDbUser
+ * hierarchy Hibernate issues a multi-table mutation that selects the pid once (in a CTE on PostgreSQL, through an
+ * id table elsewhere) and updates each table holding a changed column.  A bulk update bypasses the persistence
+ * context, so an instance of the row already managed by it is refreshed afterwards.
+ */
+public final class SiloPatches {
+
+    private SiloPatches() {
+    }
+
+    /**
+     * Applies changes, keyed by entity attribute name, to the row identified by pid.
+     * Only attributes listed in patchable may be changed; when stampUpdatedAt is set, updatedAt is refreshed as well.
+     * Returns the number of rows updated, which is 0 when the pid does not exist.
+     */
+    public static <T> int patch(EntityManager em, Class<T> entityClass, CFLibDbKeyHash256 pid,
+        Map<String, Object> changes, Set<String> patchable, boolean stampUpdatedAt)
+    {
+        for (String attribute : changes.keySet()) {
+            if (!patchable.contains(attribute)) {
+                throw new IllegalArgumentException(entityClass.getSimpleName() + " attribute '" + attribute + "' cannot be patched");
+            }
+        }
+        CriteriaBuilder cb = em.getCriteriaBuilder();
+        CriteriaUpdate<T> update = cb.createCriteriaUpdate(entityClass);
+        Root<T> root = update.from(entityClass);
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            update.set(change.getKey(), change.getValue());
+        }
+        if (stampUpdatedAt) {
+            update.set("updatedAt", LocalDateTime.now());
+        }
+        update.where(cb.equal(root.get("pid"), pid));
+        int count = em.createQuery(update).executeUpdate();
+        Object managed = managedInstance(em, entityClass, pid);
+        if (managed != null) {
+            em.refresh(managed);
+        }
+        return count;
+    }
+
+    /**
+     * The instance of the row already in em's persistence context, or null; never reads the row.
+     */
+    private static Object managedInstance(EntityManager em, Class<?> entityClass, CFLibDbKeyHash256 pid) {
+        SharedSessionContractImplementor session = em.unwrap(SharedSessionContractImplementor.class);
+        EntityPersister persister = session.getFactory().getMappingMetamodel().getEntityDescriptor(entityClass);
+        return session.getPersistenceContextInternal().getEntity(session.generateEntityKey(pid, persister));
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.zaxxer.hikari.HikariConfig;
+
+/**
+ * Binds a silo's connection pool and JPA settings from the merged properties by passing every key through
+ * rather than hand-mapping a few.  For a silo such as secdb, hikari.* and then secdb.hikari.* configure the
+ * HikariConfig (kebab-case names such as maximum-pool-size become maximumPoolSize), and hibernate.* and
+ * jakarta.persistence.* followed by their secdb.-prefixed forms become the JPA properties, each layered
+ * over the caller's defaults.  Values are validated before use and dump() prints the effective settings
+ * with credentials masked.
+ */
+public final class SiloProperties {
+
+    public static final String HIKARI_PREFIX = "hikari.";
+    public static final String MASK = "********";
+
+    private static final String[] JPA_PREFIXES = { "hibernate.", "jakarta.persistence." };
+
+    private static final Set<String> BOOLEAN_KEYS = Set.of(
+        "hibernate.show_sql", "hibernate.format_sql", "hibernate.use_sql_comments", "hibernate.generate_statistics",
+        "hibernate.order_inserts", "hibernate.order_updates", "hibernate.jdbc.batch_versioned_data",
+        "hibernate.cache.use_second_level_cache", "hibernate.cache.use_query_cache",
+        "jakarta.persistence.create-database-schemas");
+
+    private static final Set<String> HBM2DDL_ACTIONS = Set.of("none", "validate", "update", "create", "create-drop", "create-only", "drop");
+
+    private SiloProperties() {
+    }
+
+    /**
+     * The silo's HikariConfig: defaults, then the jakarta.persistence.jdbc.* connection settings, then hikari.*,
+     * then <silo>.hikari.*.  Keys Hikari does not recognize, and pool sizes that cannot work, are rejected with
+     * an IllegalArgumentException naming the silo.
+     */
+    public static HikariConfig hikariConfig(Properties merged, String silo, Properties defaults) {
+        Properties hikari = new Properties();
+        defaults.forEach((key, value) -> hikari.setProperty(hikariKey((String)key), ((String)value).trim()));
+        putIfSet(hikari, "driverClassName", silo, merged, "jakarta.persistence.jdbc.driver");
+        putIfSet(hikari, "jdbcUrl", silo, merged, "jakarta.persistence.jdbc.url");
+        putIfSet(hikari, "username", silo, merged, "jakarta.persistence.jdbc.user");
+        putIfSet(hikari, "password", silo, merged, "jakarta.persistence.jdbc.password");
+        for (String prefix : new String[] { HIKARI_PREFIX, silo + "." + HIKARI_PREFIX }) {
+            for (String key : merged.stringPropertyNames()) {
+                if (key.startsWith(prefix)) {
+                    hikari.setProperty(hikariKey(key.substring(prefix.length())), merged.getProperty(key).trim());
+                }
+            }
+        }
+
+        HikariConfig config;
+        try {
+            config = new HikariConfig(hikari);
+        }
+        catch (RuntimeException e) {
+            throw new IllegalArgumentException(silo + ".hikari settings are invalid - " + e.getMessage(), e);
+        }
+        if (config.getJdbcUrl() == null || config.getJdbcUrl().isEmpty()) {
+            throw new IllegalArgumentException(silo + " has no jakarta.persistence.jdbc.url or hikari.jdbc-url");
+        }
+        if (config.getMaximumPoolSize() < 1) {
+            throw new IllegalArgumentException(silo + ".hikari.maximum-pool-size must be at least 1, not " + config.getMaximumPoolSize());
+        }
+        if (config.getMinimumIdle() > config.getMaximumPoolSize()) {
+            throw new IllegalArgumentException(silo + ".hikari.minimum-idle " + config.getMinimumIdle()
+                + " exceeds maximum-pool-size " + config.getMaximumPoolSize());
+        }
+        return config;
+    }
+
+    /**
+     * The silo's JPA properties: defaults, then every hibernate.* and jakarta.persistence.* key, then the same
+     * keys prefixed by <silo>.; each value is trimmed and validated.
+     */
+    public static Properties jpaProperties(Properties merged, String silo, Properties defaults) {
+        Properties jpa = new Properties();
+        defaults.forEach((key, value) -> jpa.setProperty((String)key, ((String)value).trim()));
+        for (String prefix : new String[] { "", silo + "." }) {
+            for (String key : merged.stringPropertyNames()) {
+                if (!key.startsWith(prefix)) {
+                    continue;
+                }
+                String name = key.substring(prefix.length());
+                for (String jpaPrefix : JPA_PREFIXES) {
+                    if (name.startsWith(jpaPrefix)) {
+                        jpa.setProperty(name, merged.getProperty(key).trim());
+                        break;
+                    }
+                }
+            }
+        }
+        for (String key : jpa.stringPropertyNames()) {
+            validateJpa(silo, key, jpa.getProperty(key));
+        }
+        return jpa;
+    }
+
+    /**
+     * Prints title and then each setting in key order, masking passwords and naming the class of non-string values.
+     */
+    public static void dump(String title, Map<?, ?> settings) {
+        System.err.println(title);
+        new TreeMap<>(settings).forEach((key, value) -> {
+            String text;
+            if (value instanceof String) {
+                text = isSecret(key.toString()) ? MASK : (String)value;
+            }
+            else {
+                text = "instanceof(" + value.getClass().getName() + ")";
+            }
+            System.err.println("  " + key + " = " + text);
+        });
+    }
+
+    /**
+     * The effective pool settings of config as a map suitable for dump().
+     */
+    public static Map<String, Object> describe(HikariConfig config) {
+        Map<String, Object> settings = new TreeMap<>();
+        settings.put("poolName", String.valueOf(config.getPoolName()));
+        settings.put("driverClassName", String.valueOf(config.getDriverClassName()));
+        settings.put("jdbcUrl", String.valueOf(config.getJdbcUrl()));
+        settings.put("username", String.valueOf(config.getUsername()));
+        settings.put("password", String.valueOf(config.getPassword()));
+        settings.put("maximumPoolSize", Integer.toString(config.getMaximumPoolSize()));
+        settings.put("minimumIdle", Integer.toString(config.getMinimumIdle()));
+        settings.put("autoCommit", Boolean.toString(config.isAutoCommit()));
+        settings.put("readOnly", Boolean.toString(config.isReadOnly()));
+        settings.put("connectionTimeout", Long.toString(config.getConnectionTimeout()));
+        settings.put("validationTimeout", Long.toString(config.getValidationTimeout()));
+        settings.put("idleTimeout", Long.toString(config.getIdleTimeout()));
+        settings.put("maxLifetime", Long.toString(config.getMaxLifetime()));
+        settings.put("keepaliveTime", Long.toString(config.getKeepaliveTime()));
+        settings.put("leakDetectionThreshold", Long.toString(config.getLeakDetectionThreshold()));
+        settings.put("registerMbeans", Boolean.toString(config.isRegisterMbeans()));
+        config.getDataSourceProperties().forEach((key, value) -> settings.put("dataSource." + key, String.valueOf(value)));
+        return settings;
+    }
+
+    /**
+     * Converts a kebab-case Hikari key such as leak-detection-threshold to its HikariConfig property name.
+     * Driver properties (data-source.* or dataSource.*) keep their own names after the prefix.
+     */
+    static String hikariKey(String key) {
+        int dot = key.indexOf('.');
+        String head = dot < 0 ? key : key.substring(0, dot);
+        StringBuilder camel = new StringBuilder(head.length());
+        boolean upper = false;
+        for (char ch : head.toCharArray()) {
+            if (ch == '-') {
+                upper = true;
+            }
+            else {
+                camel.append(upper ? Character.toUpperCase(ch) : ch);
+                upper = false;
+            }
+        }
+        return dot < 0 ? camel.toString() : camel + key.substring(dot);
+    }
+
+    private static void putIfSet(Properties target, String name, String silo, Properties merged, String key) {
+        String value = merged.getProperty(silo + "." + key, merged.getProperty(key));
+        if (value != null && !value.trim().isEmpty()) {
+            target.setProperty(name, value.trim());
+        }
+    }
+
+    private static void validateJpa(String silo, String key, String value) {
+        if (BOOLEAN_KEYS.contains(key)) {
+            if (!"true".equalsIgnoreCase(value) && !"false".equalsIgnoreCase(value)) {
+                throw new IllegalArgumentException(silo + "." + key + " must be true or false, not '" + value + "'");
+            }
+        }
+        else if (key.endsWith("batch_size") || key.endsWith("fetch_size") || key.endsWith("pool_size")) {
+            boolean valid;
+            try {
+                valid = Integer.parseInt(value) >= 0;
+            }
+            catch (NumberFormatException e) {
+                valid = false;
+            }
+            if (!valid) {
+                throw new IllegalArgumentException(silo + "." + key + " must be a non-negative integer, not '" + value + "'");
+            }
+        }
+        else if (key.equals("hibernate.hbm2ddl.auto") && !HBM2DDL_ACTIONS.contains(value)) {
+            throw new IllegalArgumentException(silo + "." + key + " must be one of " + HBM2DDL_ACTIONS + ", not '" + value + "'");
+        }
+    }
+
+    private static boolean isSecret(String key) {
+        String lower = key.toLowerCase();
+        return lower.contains("password") || lower.contains("secret") || lower.contains("credential");
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.spi.PersistenceUnitInfo;
+
+/**
+ * Registers the DataSource, JpaProperties, EntityManagerFactory and TransactionManager beans of every silo
+ * declared by the silos property (see SiloDefinition), named <bean-prefix>DataSource and so on so that
+ * qualifiers such as secTransactionManager keep working.  A silo's @EnableJpaRepositories configuration
+ * refers to these beans by name.
+ *
+ * A lazy silo's beans are lazy-init and its pool starts with the first connection requested, so a silo
+ * whose beans nothing requests never opens a pool or bootstraps its EntityManagerFactory.  The other silos'
+ * EntityManagerFactories are built concurrently in the background (see SiloBootstrap) unless
+ * silos.background-bootstrap is false.
+ *
+ * A silo with a <silo>.replica.jdbc.url also gets <bean-prefix>ReplicaDataSource, a read-only pool on the
+ * replica, and <bean-prefix>RoutingDataSource (see SiloReplicaRouting), which its EntityManagerFactory uses.
+ *
+ * Every bean is declared through one of the static *Bean factory methods, so AOT processing (see the
+ * fast-startup profile) can capture the registrations; when the generated context is in use this class
+ * registers nothing.  Which beans exist is then fixed by the properties of the machine that built the jar: the
+ * silos list, each silo's lazy and primary settings, silos.background-bootstrap and whether a replica URL was
+ * set.  The factory methods still read the current settings, and refuse to start a silo whose replica URL was
+ * added or removed since the build rather than silently ignore it.
+ */
+public class SiloRegistry implements BeanDefinitionRegistryPostProcessor {
+
+    public static final String DATA_SOURCE = "DataSource";
+    public static final String REPLICA_DATA_SOURCE = "ReplicaDataSource";
+    public static final String ROUTING_DATA_SOURCE = "RoutingDataSource";
+    public static final String JPA_PROPERTIES = "JpaProperties";
+    public static final String ENTITY_MANAGER_FACTORY = "EntityManagerFactory";
+    public static final String TRANSACTION_MANAGER = "TransactionManager";
+
+    public static final String BACKGROUND_BOOTSTRAP_KEY = "silos.background-bootstrap";
+    public static final String BOOTSTRAP_BEAN = "siloBootstrap";
+
+    @Override
+    public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+        if (AotDetector.useGeneratedArtifacts()) {
+            // The definitions below were captured by AOT processing and are already part of the generated context
+            return;
+        }
+        SiloConfig config = SiloConfig.current();
+        List<SiloDefinition> silos = new ArrayList<>();
+        for (SiloSettings settings : config.getSilos()) {
+            silos.add(settings.getDefinition());
+        }
+        // Lazy silos are left out; they bootstrap on first use, so they are not waited for
+        int eager = 0;
+        for (SiloDefinition silo : silos) {
+            eager += silo.isLazy() ? 0 : 1;
+        }
+        boolean background = Boolean.parseBoolean(config.getProperty(BACKGROUND_BOOTSTRAP_KEY, "true").trim());
+        RootBeanDefinition bootstrap = new RootBeanDefinition(SiloBootstrap.class);
+        bootstrap.getConstructorArgumentValues().addIndexedArgumentValue(0, eager);
+        bootstrap.getConstructorArgumentValues().addIndexedArgumentValue(1, background);
+        registry.registerBeanDefinition(BOOTSTRAP_BEAN, bootstrap);
+        for (SiloDefinition silo : silos) {
+            System.err.println("SiloRegistry registering " + (silo.isLazy() ? "lazy " : "") + "silo " + silo);
+            RootBeanDefinition dataSource = register(registry, silo, DATA_SOURCE, DataSource.class, "dataSourceBean");
+            dataSource.setDestroyMethodName(AbstractBeanDefinition.INFER_METHOD);
+            String jpaDataSource = silo.beanName(DATA_SOURCE);
+            if (config.silo(silo.getName()).hasReplica()) {
+                RootBeanDefinition replica = register(registry, silo, REPLICA_DATA_SOURCE, DataSource.class, "replicaDataSourceBean");
+                replica.setDestroyMethodName(AbstractBeanDefinition.INFER_METHOD);
+                replica.setPrimary(false);
+                RootBeanDefinition routing = register(registry, silo, ROUTING_DATA_SOURCE, SiloReplicaRouting.class, "routingDataSourceBean",
+                    new RuntimeBeanReference(silo.beanName(DATA_SOURCE)),
+                    new RuntimeBeanReference(silo.beanName(REPLICA_DATA_SOURCE)));
+                routing.setDestroyMethodName("close");
+                routing.setPrimary(false);
+                jpaDataSource = silo.beanName(ROUTING_DATA_SOURCE);
+            }
+            register(registry, silo, JPA_PROPERTIES, Properties.class, "jpaPropertiesBean");
+            register(registry, silo, ENTITY_MANAGER_FACTORY, LocalContainerEntityManagerFactoryBean.class, "entityManagerFactoryBean",
+                new RuntimeBeanReference(jpaDataSource),
+                new RuntimeBeanReference(silo.beanName(JPA_PROPERTIES)),
+                new RuntimeBeanReference(BOOTSTRAP_BEAN));
+            register(registry, silo, TRANSACTION_MANAGER, SiloTransactionManager.class, "transactionManagerBean",
+                new RuntimeBeanReference(silo.beanName(ENTITY_MANAGER_FACTORY)));
+        }
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    }
+
+    public static DataSource dataSource(SiloSettings settings) {
+        SiloDefinition silo = settings.getDefinition();
+        HikariConfig config = settings.newHikariConfig();
+        SiloProperties.dump("Creating " + silo.beanName(DATA_SOURCE) + " with settings:", SiloProperties.describe(config));
+        // hikaricp.connections.* meters, tagged with the pool name
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(SiloMetrics.registry()));
+        if (silo.isLazy()) {
+            // The no-argument HikariDataSource defers starting its pool until getConnection()
+            HikariDataSource ds = new HikariDataSource();
+            config.copyStateTo(ds);
+            return ds;
+        }
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * The silo's JPA properties: every hibernate.* and jakarta.persistence.* key passes through, <silo>.-prefixed
+     * keys override the global ones, and these defaults apply when neither is set.
+     */
+    public static Properties jpaProperties(SiloDefinition silo, Properties merged) {
+        String cacheDefault = Boolean.toString(!silo.getCacheRegions().isEmpty());
+        Properties defaults = new Properties();
+        defaults.setProperty("jakarta.persistence.jdbc.url", "jdbc:postgresql://localhost:5432/dbtestdb");
+        defaults.setProperty("jakarta.persistence.jdbc.user", "postgres");
+        defaults.setProperty("jakarta.persistence.jdbc.password", "pgpassword");
+        defaults.setProperty("jakarta.persistence.schema-generation.create-source", "metadata");
+        defaults.setProperty("jakarta.persistence.schema-generation.drop-source", "metadata");
+        defaults.setProperty("jakarta.persistence.create-database-schemas", "true");
+        defaults.setProperty("jakarta.persistence.sharedCache.mode", "ENABLE_SELECTIVE");
+        defaults.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+        defaults.setProperty("hibernate.hbm2ddl.auto", "none");
+        defaults.setProperty("hibernate.show_sql", "false");
+        defaults.setProperty("hibernate.format_sql", "false");
+        defaults.setProperty("hibernate.connection_pool_size", "10");
+        defaults.setProperty("hibernate.cache.region.factory_class", "jcache");
+        defaults.setProperty("hibernate.cache.use_second_level_cache", cacheDefault);
+        defaults.setProperty("hibernate.cache.use_query_cache", cacheDefault);
+        defaults.setProperty("hibernate.javax.cache.missing_cache_strategy", "create-warn");
+        defaults.setProperty("hibernate.jdbc.batch_size", "50");
+        defaults.setProperty("hibernate.default_batch_fetch_size", "32");
+        defaults.setProperty("hibernate.order_inserts", "true");
+        defaults.setProperty("hibernate.order_updates", "true");
+        defaults.setProperty("hibernate.jdbc.batch_versioned_data", "true");
+        defaults.setProperty("hibernate.generate_statistics", "true");
+        // Otherwise generate_statistics also logs a metrics summary whenever a session closes
+        defaults.setProperty("hibernate.session.events.log", "false");
+
+        Properties applicable = SiloProperties.jpaProperties(merged, silo.getName(), defaults);
+        applicable.setProperty("jakarta.persistence.unitName", silo.getPersistenceUnit());
+        // Read by SiloSlowQueryLog rather than Hibernate
+        applicable.remove(SiloSettings.SLOW_QUERY_KEY);
+        // Compiled-in per silo; a global value must not move the silo's tables or cache regions
+        applicable.setProperty("hibernate.default_schema", silo.getSchema());
+        String regionPrefix = merged.getProperty(silo.getName() + ".hibernate.cache.region_prefix", silo.getName()).trim();
+        applicable.setProperty("hibernate.cache.region_prefix", regionPrefix);
+
+        if (Boolean.parseBoolean(applicable.getProperty("hibernate.cache.use_second_level_cache"))
+            || Boolean.parseBoolean(applicable.getProperty("hibernate.cache.use_query_cache")))
+        {
+            if ("jcache".equals(applicable.getProperty("hibernate.cache.region.factory_class"))) {
+                // Hand Hibernate a CacheManager whose regions are already sized from the <silo>.cache.* properties
+                String[] regions = new String[silo.getCacheRegions().size() + 2];
+                silo.getCacheRegions().toArray(regions);
+                regions[regions.length - 2] = SiloCaches.QUERY_RESULTS_REGION;
+                regions[regions.length - 1] = SiloCaches.UPDATE_TIMESTAMPS_REGION;
+                applicable.put("hibernate.javax.cache.cache_manager", SiloCaches.cacheManager(merged, silo.getName(), regionPrefix, regions));
+            }
+        }
+        else {
+            applicable.remove("hibernate.cache.region.factory_class");
+            applicable.remove("hibernate.cache.region_prefix");
+            applicable.remove("hibernate.javax.cache.missing_cache_strategy");
+        }
+        return applicable;
+    }
+
+    /**
+     * The silo's EntityManagerFactory bean.  Given a bootstrapExecutor, getObject() returns at once and the native
+     * factory is built in the background; the first call that needs it waits for the build to finish.
+     */
+    public static LocalContainerEntityManagerFactoryBean entityManagerFactory(SiloDefinition silo, DataSource dataSource, Properties jpaProperties,
+        AsyncTaskExecutor bootstrapExecutor)
+    {
+        try {
+            SiloProperties.dump("Creating " + silo.beanName(ENTITY_MANAGER_FACTORY) + " with properties:", jpaProperties);
+
+            LocalContainerEntityManagerFactoryBean emfBean = new LocalContainerEntityManagerFactoryBean() {
+                @Override
+                protected void postProcessEntityManagerFactory(EntityManagerFactory emf, PersistenceUnitInfo pui) {
+                    super.postProcessEntityManagerFactory(emf, pui);
+                    SiloStatistics.bind(silo, emf);
+                }
+            };
+            emfBean.setDataSource(dataSource);
+            emfBean.setPackagesToScan(silo.getPackageName());
+            emfBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            emfBean.setJpaProperties(jpaProperties);
+            emfBean.setPersistenceUnitName(silo.getPersistenceUnit());
+            if (bootstrapExecutor != null) {
+                emfBean.setBootstrapExecutor(bootstrapExecutor);
+            }
+            return emfBean;
+        }
+        catch (RuntimeException e) {
+            System.err.println("ERROR: SiloRegistry.entityManagerFactory(\"" + silo.getPersistenceUnit() + "\") threw " + e.getClass().getName() + ": " + e.getMessage());
+            e.printStackTrace(System.err);
+            throw e;
+        }
+    }
+
+    /*
+     * The bean factory methods.  Silo beans are declared as static factory methods taking the silo name, rather
+     * than as instance suppliers, so that Spring AOT processing can generate code for them.
+     */
+
+    public static DataSource dataSourceBean(String siloName) {
+        return dataSource(SiloConfig.current().silo(siloName));
+    }
+
+    public static DataSource replicaDataSourceBean(String siloName) {
+        SiloSettings settings = SiloConfig.current().silo(siloName);
+        HikariConfig config = settings.newReplicaHikariConfig();
+        if (config == null) {
+            if (AotDetector.useGeneratedArtifacts()) {
+                throw new IllegalStateException("Silo " + siloName + " has no " + siloName + "." + SiloSettings.REPLICA_URL_KEY
+                    + ", but this jar was built by AOT processing with one; rebuild it with mvn -Pfast-startup package"
+                    + " under the current properties, or start it without -Dspring.aot.enabled=true");
+            }
+            throw new IllegalStateException("Silo " + siloName + " has no " + SiloSettings.REPLICA_URL_KEY);
+        }
+        SiloProperties.dump("Creating " + settings.getDefinition().beanName(REPLICA_DATA_SOURCE) + " with settings:", SiloProperties.describe(config));
+        // hikaricp.connections.* meters, tagged with the pool name
+        config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(SiloMetrics.registry()));
+        if (settings.getDefinition().isLazy()) {
+            HikariDataSource ds = new HikariDataSource();
+            config.copyStateTo(ds);
+            return ds;
+        }
+        return new HikariDataSource(config);
+    }
+
+    public static SiloReplicaRouting routingDataSourceBean(String siloName, DataSource primary, DataSource replica) {
+        SiloSettings settings = SiloConfig.current().silo(siloName);
+        return new SiloReplicaRouting(settings, instrumented(settings, primary), instrumented(settings, replica));
+    }
+
+    public static Properties jpaPropertiesBean(String siloName) {
+        return jpaProperties(SiloConfig.current().silo(siloName).getDefinition(), DbTest.getMergedProperties());
+    }
+
+    /**
+     * Runs the silo's schema migrations (see SiloMigrator) and then builds its EntityManagerFactory; both happen on
+     * the silo's background bootstrap thread when there is one.
+     */
+    public static LocalContainerEntityManagerFactoryBean entityManagerFactoryBean(String siloName, DataSource dataSource,
+        Properties jpaProperties, SiloBootstrap bootstrap)
+    {
+        Properties merged = DbTest.getMergedProperties();
+        SiloSettings settings = SiloConfig.current().silo(siloName);
+        SiloDefinition silo = settings.getDefinition();
+        if (settings.hasReplica() && !(dataSource instanceof SiloReplicaRouting)) {
+            // Only reachable from an AOT build made without the replica URL
+            throw new IllegalStateException("Silo " + siloName + " has " + siloName + "." + SiloSettings.REPLICA_URL_KEY
+                + " set, but this jar was built by AOT processing without it, so it has no replica beans; rebuild it with"
+                + " mvn -Pfast-startup package under the current properties, or start it without -Dspring.aot.enabled=true");
+        }
+        DataSource jpaDataSource = dataSource instanceof SiloReplicaRouting ? dataSource : instrumented(settings, dataSource);
+        // Migrations always run against the primary
+        DataSource schemaSource = jpaDataSource instanceof SiloReplicaRouting routing ? routing.getPrimary() : jpaDataSource;
+        Runnable migrate = SiloMigrator.isEnabled(merged, silo.getName()) ? () -> SiloMigrator.migrate(silo, schemaSource, merged) : null;
+        if (bootstrap.isEnabled() && !silo.isLazy()) {
+            return entityManagerFactory(silo, jpaDataSource, jpaProperties, bootstrap.executor(silo, migrate));
+        }
+        if (migrate != null) {
+            migrate.run();
+        }
+        return entityManagerFactory(silo, jpaDataSource, jpaProperties, null);
+    }
+
+    public static SiloTransactionManager transactionManagerBean(String siloName, EntityManagerFactory entityManagerFactory) {
+        return transactionManager(SiloConfig.current().silo(siloName), entityManagerFactory);
+    }
+
+    public static SiloTransactionManager transactionManager(SiloSettings settings, EntityManagerFactory entityManagerFactory) {
+        SiloDefinition silo = settings.getDefinition();
+        if (entityManagerFactory == null) {
+            System.err.println("ERROR: SiloRegistry.transactionManager() " + silo.beanName(ENTITY_MANAGER_FACTORY) + " is null");
+            throw new IllegalStateException(silo.beanName(ENTITY_MANAGER_FACTORY) + " is null");
+        }
+        SiloTransactionManager transactionManager = new SiloTransactionManager(silo.getName(), entityManagerFactory);
+        transactionManager.setDefaultTimeout(settings.getTransactionTimeoutSeconds());
+        return transactionManager;
+    }
+
+    /**
+     * Wraps one of the silo's pools so its connection waits and hold times are recorded (see SiloConnectionTimer),
+     * and its slow statements logged when the silo has a slow query threshold (see SiloSlowQueryLog).
+     */
+    private static DataSource instrumented(SiloSettings settings, DataSource pool) {
+        String poolName = pool instanceof HikariDataSource hikari ? hikari.getPoolName() : settings.getName();
+        DataSource timed = new SiloConnectionTimer(settings.getName(), poolName, pool);
+        if (settings.getSlowQueryMs() > 0) {
+            return new SiloSlowQueryLog(settings.getName(), settings.getSlowQueryMs(), timed);
+        }
+        return timed;
+    }
+
+    private static RootBeanDefinition register(BeanDefinitionRegistry registry, SiloDefinition silo, String suffix,
+        Class<?> type, String factoryMethod, Object... beanArgs)
+    {
+        String name = silo.beanName(suffix);
+        if (registry.containsBeanDefinition(name)) {
+            throw new IllegalStateException("SiloRegistry cannot register " + name + " for silo " + silo.getName() + " because it is already defined");
+        }
+        RootBeanDefinition definition = new RootBeanDefinition(SiloRegistry.class);
+        definition.setFactoryMethodName(factoryMethod);
+        definition.setTargetType(type);
+        definition.getConstructorArgumentValues().addIndexedArgumentValue(0, silo.getName());
+        for (int i = 0; i < beanArgs.length; i++) {
+            definition.getConstructorArgumentValues().addIndexedArgumentValue(i + 1, beanArgs[i]);
+        }
+        definition.setPrimary(silo.isPrimary());
+        definition.setLazyInit(silo.isLazy());
+        registry.registerBeanDefinition(name, definition);
+        return definition;
+    }
+}
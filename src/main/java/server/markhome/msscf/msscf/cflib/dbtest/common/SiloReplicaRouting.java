@@ -0,0 +1,247 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * The DataSource of a silo with a read replica (<silo>.replica.jdbc.url).  Read-only transactions take their
+ * connection from the replica pool and everything else from the primary, using LazyConnectionDataSourceProxy's
+ * read-only DataSource.  A read-only transaction still uses the primary when
+ * - the replica's lag, checked every <silo>.replica.check-interval-ms, exceeds <silo>.replica.max-lag-ms,
+ *   or the replica cannot be reached;
+ * - the calling thread committed a write on the primary within the last <silo>.replica.read-your-writes-ms,
+ *   so it reads back what it wrote.
+ * A read-only method called inside a read-write transaction joins it, and so stays on the primary; lookups that
+ * must see every committed row, such as SecDbUserRefCache's referential checks, open a read-write transaction
+ * for that reason.
+ *
+ * The connection defaults come from the silo's pool settings, so building the proxy opens no connection.  A lazy
+ * silo's replica is first checked when the first read-only transaction asks for a connection; until that check
+ * finds it usable, reads use the primary.
+ */
+public class SiloReplicaRouting extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+    public static final int VALIDATION_SECONDS = 5;
+
+    private final String siloName;
+    private final DataSource primary;
+    private final DataSource replica;
+    private final long maxLagMs;
+    private final long readYourWritesNanos;
+    private final String lagQuery;
+    private final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<>();
+    private final ScheduledExecutorService monitor;
+    private final long checkIntervalMs;
+    private final AtomicBoolean monitoring = new AtomicBoolean(false);
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+
+    // Reads stay on the primary until the first check finds the replica usable
+    private volatile boolean replicaUsable = false;
+    private volatile long replicaLagMs = -1L;
+
+    public SiloReplicaRouting(SiloSettings settings, DataSource primary, DataSource replica) {
+        this.siloName = settings.getName();
+        this.primary = primary;
+        this.replica = replica;
+        this.maxLagMs = settings.getReplicaMaxLagMs();
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(settings.getReplicaReadYourWritesMs());
+        this.lagQuery = settings.getReplicaLagQuery();
+        this.checkIntervalMs = settings.getReplicaCheckIntervalMs();
+        setTargetDataSource(new WriteTrackingDataSource(primary));
+        setReadOnlyDataSource(new ReplicaOrPrimaryDataSource());
+        // Without them afterPropertiesSet() borrows a primary connection to find out, starting a lazy silo's pool
+        setDefaultAutoCommit(settings.isAutoCommit());
+        setDefaultTransactionIsolation(settings.getTransactionIsolation());
+        afterPropertiesSet();
+        monitor = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().daemon().name(siloName + "-replica-monitor").factory());
+        if (!settings.getDefinition().isLazy()) {
+            startMonitor();
+        }
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public DataSource getReplica() {
+        return replica;
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    /**
+     * The replica's lag at the last check in milliseconds, or -1 when it could not be checked.
+     */
+    public long getReplicaLagMs() {
+        return replicaLagMs;
+    }
+
+    /**
+     * Read-only transactions served by the replica.
+     */
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    /**
+     * Read-only transactions that fell back to the primary.
+     */
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    @Override
+    public void close() {
+        monitor.shutdownNow();
+    }
+
+    private void startMonitor() {
+        if (monitoring.compareAndSet(false, true)) {
+            monitor.scheduleWithFixedDelay(this::checkReplica, 0L, checkIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void checkReplica() {
+        try (Connection conn = replica.getConnection()) {
+            long lag = 0L;
+            if (!lagQuery.isEmpty()) {
+                try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(lagQuery)) {
+                    lag = rs.next() ? Math.round(rs.getDouble(1)) : 0L;
+                }
+            }
+            else if (!conn.isValid(VALIDATION_SECONDS)) {
+                throw new SQLException("Connection failed validation");
+            }
+            replicaLagMs = lag;
+            usable(lag <= maxLagMs, "lag " + lag + " ms, limit " + maxLagMs + " ms");
+        }
+        catch (SQLException | RuntimeException e) {
+            replicaLagMs = -1L;
+            usable(false, e.getMessage());
+        }
+    }
+
+    private void usable(boolean usable, String why) {
+        if (usable != replicaUsable) {
+            System.err.println("SiloReplicaRouting " + siloName + " replica " + (usable ? "in use" : "bypassed, reads use the primary") + " (" + why + ")");
+        }
+        replicaUsable = usable;
+    }
+
+    /**
+     * The primary pool, remembering when each thread last committed on it.
+     */
+    private class WriteTrackingDataSource extends DelegatingDataSource {
+
+        WriteTrackingDataSource(DataSource primary) {
+            super(primary);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return tracked(obtainTargetDataSource().getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return tracked(obtainTargetDataSource().getConnection(username, password));
+        }
+
+        private Connection tracked(Connection conn) {
+            return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    }
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    try {
+                        Object result = method.invoke(conn, args);
+                        if ("commit".equals(method.getName())) {
+                            lastWriteNanos.set(System.nanoTime());
+                        }
+                        return result;
+                    }
+                    catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+        }
+    }
+
+    /**
+     * The read-only DataSource: the replica pool when it is usable and the thread has no recent write,
+     * otherwise the primary pool.
+     */
+    private class ReplicaOrPrimaryDataSource extends DelegatingDataSource {
+
+        ReplicaOrPrimaryDataSource() {
+            super(replica);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            startMonitor();
+            Long lastWrite = lastWriteNanos.get();
+            boolean recentWrite = lastWrite != null && System.nanoTime() - lastWrite < readYourWritesNanos;
+            if (replicaUsable && !recentWrite) {
+                try {
+                    Connection conn = replica.getConnection();
+                    replicaReads.increment();
+                    return conn;
+                }
+                catch (SQLException e) {
+                    usable(false, e.getMessage());
+                }
+            }
+            primaryReads.increment();
+            Connection conn = primary.getConnection();
+            conn.setReadOnly(true);
+            return conn;
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            // Both pools carry their own credentials
+            return getConnection();
+        }
+    }
+}
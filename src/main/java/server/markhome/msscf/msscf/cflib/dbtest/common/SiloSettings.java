@@ -0,0 +1,357 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.zaxxer.hikari.HikariConfig;
+
+/**
+ * One silo's typed settings, parsed and validated once from the merged properties.  Instances are immutable;
+ * a reload of the properties builds new ones (see SiloConfig).
+ */
+public final class SiloSettings {
+
+    public static final String TRANSACTION_TIMEOUT_KEY = "transaction.timeout-seconds";
+    public static final String REPLICA_URL_KEY = "replica.jdbc.url";
+    /** Not a Hibernate setting; SiloRegistry keeps it out of the JPA properties. */
+    public static final String SLOW_QUERY_KEY = "hibernate.slow_query_ms";
+
+    /** How far behind the primary, by default, a replica may fall before reads return to the primary. */
+    public static final long DEFAULT_REPLICA_MAX_LAG_MS = 1000L;
+    /** How long, by default, a thread that committed a write keeps reading from the primary. */
+    public static final long DEFAULT_REPLICA_READ_YOUR_WRITES_MS = 2000L;
+    public static final long DEFAULT_REPLICA_CHECK_INTERVAL_MS = 1000L;
+
+    /** Replay lag in milliseconds; 0 on a primary, or on a standby that has replayed everything it received. */
+    public static final String POSTGRESQL_LAG_QUERY =
+        "SELECT CASE WHEN NOT pg_is_in_recovery() OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+        + "ELSE COALESCE(EXTRACT(EPOCH FROM (clock_timestamp() - pg_last_xact_replay_timestamp())) * 1000, 0) END";
+
+    /** The pool settings HikariConfigMXBean can change while the pool is running. */
+    public static final Set<String> HOT_POOL_SETTINGS = Set.of("maximumPoolSize", "minimumIdle", "leakDetectionThreshold",
+        "connectionTimeout", "validationTimeout", "idleTimeout", "maxLifetime");
+
+    private final SiloDefinition definition;
+    private final HikariConfig pool;
+    private final Map<String, Object> poolSettings;
+    private final int transactionTimeoutSeconds;
+    private final long slowQueryMs;
+    private final HikariConfig replicaPool;
+    private final Map<String, Object> replicaPoolSettings;
+    private final long replicaMaxLagMs;
+    private final long replicaReadYourWritesMs;
+    private final long replicaCheckIntervalMs;
+    private final String replicaLagQuery;
+
+    private SiloSettings(SiloDefinition definition, HikariConfig pool, int transactionTimeoutSeconds, long slowQueryMs,
+        HikariConfig replicaPool, long replicaMaxLagMs, long replicaReadYourWritesMs, long replicaCheckIntervalMs, String replicaLagQuery)
+    {
+        this.definition = definition;
+        this.pool = pool;
+        this.poolSettings = Collections.unmodifiableMap(SiloProperties.describe(pool));
+        this.transactionTimeoutSeconds = transactionTimeoutSeconds;
+        this.slowQueryMs = slowQueryMs;
+        this.replicaPool = replicaPool;
+        this.replicaPoolSettings = replicaPool != null ? Collections.unmodifiableMap(SiloProperties.describe(replicaPool)) : Collections.emptyMap();
+        this.replicaMaxLagMs = replicaMaxLagMs;
+        this.replicaReadYourWritesMs = replicaReadYourWritesMs;
+        this.replicaCheckIntervalMs = replicaCheckIntervalMs;
+        this.replicaLagQuery = replicaLagQuery;
+    }
+
+    public static SiloSettings from(Properties merged, SiloDefinition silo) {
+        HikariConfig pool = SiloProperties.hikariConfig(merged, silo.getName(), poolDefaults(silo));
+        String timeout = merged.getProperty(silo.getName() + "." + TRANSACTION_TIMEOUT_KEY, merged.getProperty(TRANSACTION_TIMEOUT_KEY, "-1")).trim();
+        int timeoutSeconds;
+        try {
+            timeoutSeconds = Integer.parseInt(timeout);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(silo.getName() + "." + TRANSACTION_TIMEOUT_KEY + " must be a whole number of seconds, not \"" + timeout + "\"", e);
+        }
+        if (timeoutSeconds < -1) {
+            throw new IllegalArgumentException(silo.getName() + "." + TRANSACTION_TIMEOUT_KEY + " must be -1 (none) or more");
+        }
+        String slowQuery = merged.getProperty(silo.getName() + "." + SLOW_QUERY_KEY, merged.getProperty(SLOW_QUERY_KEY, "0")).trim();
+        long slowQueryMs;
+        try {
+            slowQueryMs = Long.parseLong(slowQuery);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(silo.getName() + "." + SLOW_QUERY_KEY + " must be a whole number of milliseconds, not \"" + slowQuery + "\"", e);
+        }
+        if (slowQueryMs < 0L) {
+            throw new IllegalArgumentException(silo.getName() + "." + SLOW_QUERY_KEY + " must be 0 (off) or more");
+        }
+
+        String replicaUrl = merged.getProperty(silo.getName() + "." + REPLICA_URL_KEY, "").trim();
+        if (replicaUrl.isEmpty()) {
+            return new SiloSettings(silo, pool, timeoutSeconds, slowQueryMs, null, 0L, 0L, 0L, "");
+        }
+        // The replica pool mirrors the primary's apart from where it connects and how large it is
+        HikariConfig replicaPool = new HikariConfig();
+        pool.copyStateTo(replicaPool);
+        replicaPool.setJdbcUrl(replicaUrl);
+        replicaPool.setUsername(replicaSetting(merged, silo, "username", pool.getUsername()));
+        replicaPool.setPassword(replicaSetting(merged, silo, "password", pool.getPassword()));
+        replicaPool.setPoolName(pool.getPoolName() + "-replica");
+        replicaPool.setReadOnly(true);
+        replicaPool.setMaximumPoolSize((int)replicaNumber(merged, silo, "maximum-pool-size", pool.getMaximumPoolSize(), 1L));
+        replicaPool.setMinimumIdle((int)replicaNumber(merged, silo, "minimum-idle", pool.getMinimumIdle(), 0L));
+        try {
+            replicaPool.validate();
+        }
+        catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(silo.getName() + ".replica settings are invalid - " + e.getMessage(), e);
+        }
+        String lagQuery = replicaSetting(merged, silo, "lag-query", replicaUrl.startsWith("jdbc:postgresql:") ? POSTGRESQL_LAG_QUERY : "");
+        return new SiloSettings(silo, pool, timeoutSeconds, slowQueryMs, replicaPool,
+            replicaNumber(merged, silo, "max-lag-ms", DEFAULT_REPLICA_MAX_LAG_MS, 0L),
+            replicaNumber(merged, silo, "read-your-writes-ms", DEFAULT_REPLICA_READ_YOUR_WRITES_MS, 0L),
+            replicaNumber(merged, silo, "check-interval-ms", DEFAULT_REPLICA_CHECK_INTERVAL_MS, 1L),
+            lagQuery);
+    }
+
+    // <silo>.replica.<key>, then replica.<key>, then defaultValue
+    private static String replicaSetting(Properties merged, SiloDefinition silo, String key, String defaultValue) {
+        String value = merged.getProperty(silo.getName() + ".replica." + key, merged.getProperty("replica." + key));
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    private static long replicaNumber(Properties merged, SiloDefinition silo, String key, long defaultValue, long minimum) {
+        String value = replicaSetting(merged, silo, key, Long.toString(defaultValue));
+        long number;
+        try {
+            number = Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(silo.getName() + ".replica." + key + " must be a whole number, not \"" + value + "\"", e);
+        }
+        if (number < minimum) {
+            throw new IllegalArgumentException(silo.getName() + ".replica." + key + " must be at least " + minimum);
+        }
+        return number;
+    }
+
+    /**
+     * The pool settings a silo gets when neither <silo>.hikari.* nor hikari.* sets them.
+     */
+    public static Properties poolDefaults(SiloDefinition silo) {
+        Properties defaults = new Properties();
+        defaults.setProperty("jdbc-url", "jdbc:postgresql://localhost:5432/yourdb");
+        defaults.setProperty("driver-class-name", "org.postgresql.Driver");
+        defaults.setProperty("username", "postgres");
+        defaults.setProperty("password", "pgpassword");
+        defaults.setProperty("maximum-pool-size", "10");
+        defaults.setProperty("minimum-idle", "5");
+        defaults.setProperty("pool-name", silo.getName() + "HikariCP");
+        defaults.setProperty("auto-commit", "false");
+        return defaults;
+    }
+
+    public SiloDefinition getDefinition() {
+        return definition;
+    }
+
+    public String getName() {
+        return definition.getName();
+    }
+
+    /**
+     * A new HikariConfig holding these pool settings, for building the silo's HikariDataSource.
+     */
+    public HikariConfig newHikariConfig() {
+        HikariConfig config = new HikariConfig();
+        pool.copyStateTo(config);
+        return config;
+    }
+
+    /**
+     * The pool settings by HikariConfig property name, as SiloProperties.describe() reports them.
+     */
+    public Map<String, Object> getPoolSettings() {
+        return poolSettings;
+    }
+
+    public int getMaximumPoolSize() {
+        return pool.getMaximumPoolSize();
+    }
+
+    public int getMinimumIdle() {
+        return pool.getMinimumIdle();
+    }
+
+    public long getConnectionTimeoutMs() {
+        return pool.getConnectionTimeout();
+    }
+
+    public long getValidationTimeoutMs() {
+        return pool.getValidationTimeout();
+    }
+
+    public long getIdleTimeoutMs() {
+        return pool.getIdleTimeout();
+    }
+
+    public long getMaxLifetimeMs() {
+        return pool.getMaxLifetime();
+    }
+
+    public long getLeakDetectionThresholdMs() {
+        return pool.getLeakDetectionThreshold();
+    }
+
+    /**
+     * The auto-commit mode the pool's connections are handed out in.
+     */
+    public boolean isAutoCommit() {
+        return pool.isAutoCommit();
+    }
+
+    /**
+     * The isolation level the pool's connections are handed out in, as a java.sql.Connection constant.  When the
+     * pool leaves it to the driver this is READ_COMMITTED, the default of PostgreSQL and H2.
+     */
+    public int getTransactionIsolation() {
+        String isolation = pool.getTransactionIsolation();
+        if (isolation == null || isolation.isBlank()) {
+            return Connection.TRANSACTION_READ_COMMITTED;
+        }
+        try {
+            return Integer.parseInt(isolation.trim());
+        }
+        catch (NumberFormatException e) {
+            // Named, as HikariConfig accepts it, after the Connection constant
+        }
+        try {
+            return Connection.class.getField(isolation.trim().toUpperCase(Locale.ROOT)).getInt(null);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(getName() + ".hikari.transaction-isolation \"" + isolation + "\" is not a java.sql.Connection isolation level", e);
+        }
+    }
+
+    /**
+     * The default transaction timeout of the silo's transaction manager, which also bounds each statement run
+     * in the transaction; -1 means none.
+     */
+    public int getTransactionTimeoutSeconds() {
+        return transactionTimeoutSeconds;
+    }
+
+    /**
+     * Statements taking at least this long are logged by SiloSlowQueryLog; 0 turns the log off.
+     */
+    public long getSlowQueryMs() {
+        return slowQueryMs;
+    }
+
+    /**
+     * True when <silo>.replica.jdbc.url names a read replica for the silo's read-only transactions.
+     */
+    public boolean hasReplica() {
+        return replicaPool != null;
+    }
+
+    /**
+     * A new HikariConfig for the replica pool, or null when the silo has no replica.
+     */
+    public HikariConfig newReplicaHikariConfig() {
+        if (replicaPool == null) {
+            return null;
+        }
+        HikariConfig config = new HikariConfig();
+        replicaPool.copyStateTo(config);
+        return config;
+    }
+
+    public Map<String, Object> getReplicaPoolSettings() {
+        return replicaPoolSettings;
+    }
+
+    public int getReplicaMaximumPoolSize() {
+        return replicaPool != null ? replicaPool.getMaximumPoolSize() : 0;
+    }
+
+    public int getReplicaMinimumIdle() {
+        return replicaPool != null ? replicaPool.getMinimumIdle() : 0;
+    }
+
+    public long getReplicaMaxLagMs() {
+        return replicaMaxLagMs;
+    }
+
+    public long getReplicaReadYourWritesMs() {
+        return replicaReadYourWritesMs;
+    }
+
+    public long getReplicaCheckIntervalMs() {
+        return replicaCheckIntervalMs;
+    }
+
+    /**
+     * The query that reports the replica's lag in milliseconds; empty when only the replica's health is checked.
+     */
+    public String getReplicaLagQuery() {
+        return replicaLagQuery;
+    }
+
+    /**
+     * The names of the pool settings whose values differ between these settings and other.
+     */
+    public Set<String> changedPoolSettings(SiloSettings other) {
+        return changed(poolSettings, other.poolSettings);
+    }
+
+    /**
+     * The names of the replica pool settings whose values differ between these settings and other.
+     */
+    public Set<String> changedReplicaPoolSettings(SiloSettings other) {
+        return changed(replicaPoolSettings, other.replicaPoolSettings);
+    }
+
+    private static Set<String> changed(Map<String, Object> before, Map<String, Object> after) {
+        Set<String> changed = new TreeSet<>();
+        Set<String> names = new TreeSet<>(before.keySet());
+        names.addAll(after.keySet());
+        for (String name : names) {
+            if (!Objects.equals(before.get(name), after.get(name))) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public String toString() {
+        return definition.getName() + " (maximumPoolSize=" + getMaximumPoolSize() + ", minimumIdle=" + getMinimumIdle()
+            + ", leakDetectionThreshold=" + getLeakDetectionThresholdMs() + " ms, transactionTimeout=" + transactionTimeoutSeconds + " s"
+            + (replicaPool != null ? ", replica " + replicaPool.getJdbcUrl() : "") + ")";
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import io.micrometer.core.instrument.Counter;
+
+/**
+ * Wraps one of a silo's pools to log every statement that takes at least <silo>.hibernate.slow_query_ms, with its
+ * SQL, bind count and the service method whose transaction ran it (see SiloTransactionManager.currentMethod),
+ * and to count them as dbtest.slow.queries.  SiloRegistry only adds it when the threshold is above 0, so
+ * statements pay nothing for it otherwise.
+ */
+public class SiloSlowQueryLog extends DelegatingDataSource {
+
+    public static final String SLOW_QUERIES = "dbtest.slow.queries";
+
+    private final String silo;
+    private final long thresholdNanos;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public SiloSlowQueryLog(String silo, long thresholdMs, DataSource target) {
+        super(target);
+        this.silo = silo;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return watched(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return watched(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    private Connection watched(Connection conn) {
+        return (Connection)Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        break;
+                }
+                Object result = invoke(conn, method, args);
+                if (result instanceof Statement stmt && method.getName().startsWith("prepare")) {
+                    return watched(stmt, method.getReturnType(), (String)args[0]);
+                }
+                if (result instanceof Statement stmt && method.getName().equals("createStatement")) {
+                    return watched(stmt, Statement.class, null);
+                }
+                return result;
+            });
+    }
+
+    private Object watched(Statement stmt, Class<?> type, String preparedSql) {
+        int[] binds = { 0 };
+        int[] batched = { 0 };
+        Class<?> proxied = CallableStatement.class.isAssignableFrom(type) ? CallableStatement.class
+            : PreparedStatement.class.isAssignableFrom(type) ? PreparedStatement.class : Statement.class;
+        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] { proxied },
+            (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.equals("equals")) {
+                    return proxy == args[0];
+                }
+                if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                if (name.startsWith("set") && method.getDeclaringClass() != Statement.class
+                    && args != null && args.length > 1 && args[0] instanceof Integer index)
+                {
+                    binds[0] = Math.max(binds[0], index);
+                }
+                else if (name.equals("addBatch") && args == null) {
+                    batched[0]++;
+                }
+                else if (name.equals("clearBatch")) {
+                    batched[0] = 0;
+                }
+                else if (name.startsWith("execute")) {
+                    long start = System.nanoTime();
+                    try {
+                        return invoke(stmt, method, args);
+                    }
+                    finally {
+                        long elapsed = System.nanoTime() - start;
+                        if (elapsed >= thresholdNanos) {
+                            String sql = preparedSql != null ? preparedSql : (args != null && args.length > 0 && args[0] instanceof String text ? text : "(batch)");
+                            slow(sql, binds[0], batched[0], elapsed);
+                        }
+                        if (name.endsWith("Batch")) {
+                            batched[0] = 0;
+                        }
+                    }
+                }
+                return invoke(stmt, method, args);
+            });
+    }
+
+    private void slow(String sql, int binds, int batched, long elapsedNanos) {
+        String method = SiloTransactionManager.currentMethod(silo);
+        counters.computeIfAbsent(method, (key) -> Counter.builder(SLOW_QUERIES)
+            .description("Statements at or above the silo's slow query threshold")
+            .tags("silo", silo, "method", key)
+            .register(SiloMetrics.registry()))
+            .increment();
+        System.err.println("SLOW QUERY " + silo + " " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms in " + method
+            + ", " + binds + " binds" + (batched > 0 ? " x " + batched + " batched rows" : "") + ": " + sql);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.HibernateMetrics;
+import org.hibernate.stat.Statistics;
+
+import io.micrometer.core.instrument.Tags;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Publishes each persistence unit's own Hibernate Statistics as hibernate.* meters tagged with its silo, so SecDbPU
+ * and AppDbPU are never rolled together.  Statistics are collected when <silo>.hibernate.generate_statistics is true.
+ */
+public final class SiloStatistics {
+
+    // Bound persistence units by silo name
+    private static final Map<String, Statistics> bound = new ConcurrentSkipListMap<>();
+
+    private SiloStatistics() {
+    }
+
+    /**
+     * Binds the silo's freshly built EntityManagerFactory; called on the thread that built it.
+     */
+    public static void bind(SiloDefinition silo, EntityManagerFactory entityManagerFactory) {
+        SessionFactory sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        Statistics statistics = sessionFactory.getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            System.err.println("SiloStatistics: " + silo.getPersistenceUnit() + " has hibernate.generate_statistics off");
+            return;
+        }
+        new HibernateMetrics(sessionFactory, silo.getPersistenceUnit(), Tags.of("silo", silo.getName())).bindTo(SiloMetrics.registry());
+        bound.put(silo.getName(), statistics);
+    }
+
+    /**
+     * Prints the headline counters of every bound persistence unit.
+     */
+    public static void report(String title) {
+        System.err.println(title);
+        for (Map.Entry<String, Statistics> entry : bound.entrySet()) {
+            Statistics stats = entry.getValue();
+            System.err.println("    " + entry.getKey() + ": queries=" + stats.getQueryExecutionCount()
+                + " (slowest " + stats.getQueryExecutionMaxTime() + " ms: " + stats.getQueryExecutionMaxTimeQueryString() + ")"
+                + ", entity loads=" + stats.getEntityLoadCount() + " fetches=" + stats.getEntityFetchCount()
+                + " inserts=" + stats.getEntityInsertCount() + " updates=" + stats.getEntityUpdateCount()
+                + ", L2 hits=" + stats.getSecondLevelCacheHitCount() + " misses=" + stats.getSecondLevelCacheMissCount()
+                + ", flushes=" + stats.getFlushCount() + ", statements=" + stats.getPrepareStatementCount());
+        }
+    }
+}
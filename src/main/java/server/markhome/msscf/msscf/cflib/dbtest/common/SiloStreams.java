@@ -0,0 +1,79 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.hibernate.CacheMode;
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+/**
+ * Forward-only result streams for whole-table exports.  Rows are fetched fetchSize at a time through a
+ * server-side cursor (PostgreSQL only opens one inside a transaction) and each entity is detached as it is
+ * handed out, so the persistence context does not grow with the table.
+ */
+public final class SiloStreams {
+
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private SiloStreams() {
+    }
+
+    /**
+     * Resolves <silo>.export.fetch-size, falling back to export.fetch-size.
+     */
+    public static int fetchSize(Properties merged, String silo) {
+        int size = Integer.parseInt(merged.getProperty(silo + ".export.fetch-size",
+            merged.getProperty("export.fetch-size", Integer.toString(DEFAULT_FETCH_SIZE))).trim());
+        return size > 0 ? size : DEFAULT_FETCH_SIZE;
+    }
+
+    public static <T> Stream<T> detaching(EntityManager em, Class<T> entityClass, String jpql, int fetchSize) {
+        return detaching(em, entityClass, jpql, fetchSize, null);
+    }
+
+    /**
+     * As detaching(), for a query that join fetches a to-one association: the entity fetched returns for each row
+     * is detached along with it, so consumers can read it after the row is handed out.
+     */
+    public static <T> Stream<T> detaching(EntityManager em, Class<T> entityClass, String jpql, int fetchSize,
+        Function<T, Object> fetched)
+    {
+        TypedQuery<T> query = em.createQuery(jpql, entityClass);
+        query.setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize);
+        query.setHint(HibernateHints.HINT_READ_ONLY, true);
+        // An export must not flood the second-level cache
+        query.setHint(HibernateHints.HINT_CACHE_MODE, CacheMode.IGNORE);
+        return query.getResultStream().map((row) -> {
+            em.detach(row);
+            Object associated = fetched != null ? fetched.apply(row) : null;
+            if (associated != null && em.contains(associated)) {
+                em.detach(associated);
+            }
+            return row;
+        });
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * A silo's JpaTransactionManager that records each physical transaction's duration per service method, and how
+ * many transactions were already open on the thread when it began: in total, and from other silos, whose pools
+ * each still hold a connection for it (e.g. AppDbAddressService.create calling SecDbUserService.find).
+ * Transactions that join an existing one are not physical transactions and are not recorded.
+ */
+public class SiloTransactionManager extends JpaTransactionManager {
+
+    private static final class Frame {
+        final String silo;
+        final String method;
+        final long startNanos = System.nanoTime();
+        String outcome = "unknown";
+
+        Frame(String silo, String method) {
+            this.silo = silo;
+            this.method = method;
+        }
+    }
+
+    // Every silo's open physical transactions on this thread, innermost first
+    private static final ThreadLocal<ArrayDeque<Frame>> open = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final String silo;
+    private final Map<String, Timer> durations = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> nested = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> crossSilo = new ConcurrentHashMap<>();
+
+    public SiloTransactionManager(String silo, EntityManagerFactory entityManagerFactory) {
+        super(entityManagerFactory);
+        this.silo = silo;
+    }
+
+    /**
+     * The service method of silo's innermost open transaction on this thread, or SiloMetrics.NO_METHOD.
+     */
+    public static String currentMethod(String silo) {
+        for (Frame frame : open.get()) {
+            if (frame.silo.equals(silo)) {
+                return frame.method;
+            }
+        }
+        return SiloMetrics.NO_METHOD;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        ArrayDeque<Frame> frames = open.get();
+        Frame frame = new Frame(silo, SiloMetrics.methodName(definition.getName()));
+        int otherSilos = 0;
+        for (Frame outer : frames) {
+            otherSilos += outer.silo.equals(silo) ? 0 : 1;
+        }
+        nested.computeIfAbsent(frame.method, (method) -> SiloMetrics.summary(SiloMetrics.TRANSACTION_NESTED,
+            "Physical transactions already open on the thread when this one began", "silo", silo, "method", method))
+            .record(frames.size());
+        crossSilo.computeIfAbsent(frame.method, (method) -> SiloMetrics.summary(SiloMetrics.TRANSACTION_CROSS_SILO,
+            "Other silos' transactions, each holding a connection, open on the thread when this one began", "silo", silo, "method", method))
+            .record(otherSilos);
+        frames.push(frame);
+        try {
+            super.doBegin(transaction, definition);
+        }
+        catch (RuntimeException e) {
+            frames.remove(frame);
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        outcome("commit");
+        super.doCommit(status);
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+        outcome("rollback");
+        super.doRollback(status);
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        }
+        finally {
+            Iterator<Frame> frames = open.get().iterator();
+            while (frames.hasNext()) {
+                Frame frame = frames.next();
+                if (frame.silo.equals(silo)) {
+                    frames.remove();
+                    long elapsed = System.nanoTime() - frame.startNanos;
+                    durations.computeIfAbsent(frame.method + '/' + frame.outcome, (key) -> SiloMetrics.timer(SiloMetrics.TRANSACTION_DURATION,
+                        "Physical transaction duration", "silo", silo, "method", frame.method, "outcome", frame.outcome))
+                        .record(elapsed, TimeUnit.NANOSECONDS);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void outcome(String outcome) {
+        for (Frame frame : open.get()) {
+            if (frame.silo.equals(silo)) {
+                frame.outcome = outcome;
+                return;
+            }
+        }
+    }
+}
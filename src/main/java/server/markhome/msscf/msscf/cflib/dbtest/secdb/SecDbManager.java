@@ -22,6 +22,7 @@ package server.markhome.msscf.msscf.cflib.dbtest.secdb;
 
 import jakarta.persistence.AttributeOverride;
 import jakarta.persistence.AttributeOverrides;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.DiscriminatorValue;
 import jakarta.persistence.Entity;
@@ -29,22 +30,32 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedQuery;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Table;
 import jakarta.transaction.Transactional;
 
+import org.hibernate.annotations.DynamicUpdate;
+
 import java.util.Set;
 import java.util.HashSet;
 
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 
 @Entity
+@DynamicUpdate
+@Cacheable
+@NamedQuery(name = "SecDbManager.findByUsername",
+    query = "select m from SecDbManager m where m.username = :username")
+@NamedQuery(name = "SecDbManager.findByDepartmentCode",
+    query = "select m from SecDbManager m where m.departmentCode = :departmentCode")
 @DiscriminatorValue("1")
 @Table(
     name = "sec_mgr", schema = "secdb",
     indexes = {
-        @Index(name = "sec_mgr_deptcode_ax", columnList = "deptcode", unique = true)
+        @Index(name = "sec_mgr_deptcode_ax", columnList = "deptcode", unique = true),
+        @Index(name = "sec_mgr_dxsubdeptof", columnList = "subdeptof", unique = false)
     }
 )
 @Transactional(Transactional.TxType.SUPPORTS)
@@ -0,0 +1,61 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import jakarta.persistence.*;
+import jakarta.transaction.Transactional;
+
+/**
+ * One row per (ancestor, descendant) pair of the SecDbManager.subDepartmentOf hierarchy, including the
+ * depth 0 row pairing each manager with itself.  The primary key answers "is X under Y" and lists a
+ * department's descendants with a single index lookup.  Rows are maintained by SecDbManagerService.
+ */
+@Entity
+@Table(name = "sec_mgr_closure", schema = "secdb",
+    indexes = {
+        @Index(name = "sec_mgr_closure_dxdesc", columnList = "descendant_pid,ancestor_pid", unique = true)
+    }
+)
+@Transactional(Transactional.TxType.SUPPORTS)
+@PersistenceContext(unitName = "SecDbPU")
+public class SecDbManagerClosure {
+
+    @EmbeddedId
+    private SecDbManagerClosureId id;
+
+    @Column(name = "depth", nullable = false)
+    private int depth;
+
+    public SecDbManagerClosure() {}
+
+    public SecDbManagerClosure(SecDbManagerClosureId id, int depth) {
+        this.id = id;
+        this.depth = depth;
+    }
+
+    public SecDbManagerClosureId getId() {
+        return id;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * An opt-in startup task (secdb.manager.closure.startup-check) that compares sec_mgr_closure with the managers'
+ * subDepartmentOf links and rebuilds it when it does not hold exactly one self row per manager or its depth 1
+ * rows differ from the links, e.g. after rows were written outside SecDbManagerService.  The initial backfill is
+ * migration V5; this check reads the whole closure table, so it is off by default.  Should the rebuild fail,
+ * SecDbManagerService's closure queries throw rather than answer from the drifted table.
+ */
+@Component("SecDbManagerClosureCheck")
+public class SecDbManagerClosureCheck {
+
+    public static final String ENABLED_KEY = "secdb.manager.closure.startup-check";
+
+    @Autowired
+    private SecDbManagerRepository secDbManagerRepository;
+
+    @Autowired
+    private SecDbManagerClosureRepository secDbManagerClosureRepository;
+
+    @Autowired
+    private SecDbManagerService secDbManagerService;
+
+    @Autowired
+    @Qualifier("secTransactionManager")
+    private PlatformTransactionManager secTransactionManager;
+
+    public boolean isEnabled() {
+        return Boolean.parseBoolean(DbTest.getMergedProperties().getProperty(ENABLED_KEY, "false").trim());
+    }
+
+    /**
+     * Checks the closure table and rebuilds it if it has drifted, returning what was done.
+     */
+    public String check() {
+        int maxDepth = Integer.parseInt(DbTest.getMergedProperties().getProperty("secdb.manager.hierarchy.max-depth", "64").trim());
+        try {
+            return new TransactionTemplate(secTransactionManager).execute((status) -> {
+                long managers = secDbManagerRepository.count();
+                long closed = secDbManagerClosureRepository.countManagers();
+                long mismatched = secDbManagerClosureRepository.countMismatchedEdges();
+                if (managers == closed && mismatched == 0L) {
+                    return "sec_mgr_closure matches " + managers + " managers";
+                }
+                long start = System.currentTimeMillis();
+                int rows = secDbManagerClosureRepository.rebuild(maxDepth);
+                return "sec_mgr_closure covered " + closed + " of " + managers + " managers with " + mismatched
+                    + " mismatched edges; rebuilt " + rows + " rows in " + (System.currentTimeMillis() - start) + " ms";
+            });
+        }
+        catch (RuntimeException e) {
+            secDbManagerService.markHierarchyUnusable("SecDbManagerClosureCheck could not rebuild sec_mgr_closure - " + e.getMessage());
+            throw e;
+        }
+    }
+}
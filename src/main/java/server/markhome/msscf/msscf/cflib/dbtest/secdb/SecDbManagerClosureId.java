@@ -0,0 +1,79 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+import jakarta.persistence.AttributeOverride;
+import jakarta.persistence.AttributeOverrides;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+@Embeddable
+public class SecDbManagerClosureId implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @AttributeOverrides({
+        @AttributeOverride(name = "bytes", column = @Column(name = "ancestor_pid", nullable = false, length = CFLibDbKeyHash256.HASH_LENGTH))
+    })
+    private CFLibDbKeyHash256 ancestor;
+
+    @AttributeOverrides({
+        @AttributeOverride(name = "bytes", column = @Column(name = "descendant_pid", nullable = false, length = CFLibDbKeyHash256.HASH_LENGTH))
+    })
+    private CFLibDbKeyHash256 descendant;
+
+    public SecDbManagerClosureId() {}
+
+    public SecDbManagerClosureId(CFLibDbKeyHash256 ancestor, CFLibDbKeyHash256 descendant) {
+        this.ancestor = ancestor;
+        this.descendant = descendant;
+    }
+
+    public CFLibDbKeyHash256 getAncestor() {
+        return ancestor;
+    }
+
+    public CFLibDbKeyHash256 getDescendant() {
+        return descendant;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SecDbManagerClosureId)) {
+            return false;
+        }
+        SecDbManagerClosureId other = (SecDbManagerClosureId)o;
+        return Objects.equals(ancestor, other.ancestor) && Objects.equals(descendant, other.descendant);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(ancestor, descendant);
+    }
+}
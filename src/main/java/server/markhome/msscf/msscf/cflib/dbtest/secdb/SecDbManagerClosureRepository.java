@@ -0,0 +1,37 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.util.List;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface SecDbManagerClosureRepository extends JpaRepository<SecDbManagerClosure, SecDbManagerClosureId>, SecDbManagerClosureRepositoryCustom {
+
+    @Query("select c.id.descendant from SecDbManagerClosure c where c.id.ancestor = :ancestor and c.depth > 0 order by c.depth")
+    List<CFLibDbKeyHash256> findDescendantPids(@Param("ancestor") CFLibDbKeyHash256 ancestor);
+
+    @Query("select count(c) from SecDbManagerClosure c where c.depth = 0")
+    long countManagers();
+}
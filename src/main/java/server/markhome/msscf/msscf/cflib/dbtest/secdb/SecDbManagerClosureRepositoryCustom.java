@@ -0,0 +1,56 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public interface SecDbManagerClosureRepositoryCustom {
+    /**
+     * Adds the closure rows of a newly created manager: itself at depth 0 plus one row per ancestor of its parent.
+     * The parent's own closure rows must already exist.
+     */
+    void insertLeaf(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 parentPid);
+
+    /**
+     * Re-parents the subtree rooted at pid under parentPid (null makes it a root), replacing every path that
+     * linked the subtree to its former ancestors.
+     */
+    void moveSubtree(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 parentPid);
+
+    /**
+     * Serializes hierarchy changes until the current transaction ends, so that a cycle check and the closure rewrite
+     * it guards cannot interleave with another re-parenting.  On PostgreSQL this is a transaction-scoped advisory
+     * lock covering the whole hierarchy; elsewhere the sec_mgr rows of pid and parentPid are locked in pid order,
+     * which only rules out a cycle between the two managers themselves.
+     */
+    void lockHierarchy(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 parentPid);
+
+    /**
+     * Counts the subdeptof links of sec_mgr that have no depth 1 closure row, plus the depth 1 closure rows that
+     * no subdeptof link accounts for.  Zero when the parent edges of the closure match the managers.
+     */
+    long countMismatchedEdges();
+
+    /**
+     * Rebuilds the whole table from sec_mgr.subdeptof with one recursive statement.  Returns the rows written.
+     */
+    int rebuild(int maxDepth);
+}
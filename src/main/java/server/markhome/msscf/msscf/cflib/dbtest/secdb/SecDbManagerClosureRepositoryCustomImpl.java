@@ -0,0 +1,140 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class SecDbManagerClosureRepositoryCustomImpl implements SecDbManagerClosureRepositoryCustom {
+
+    private static final String INSERT_LEAF =
+        "INSERT INTO {h-schema}sec_mgr_closure (ancestor_pid, descendant_pid, depth) "
+        + "SELECT :pid, :pid, 0 "
+        + "UNION ALL "
+        + "SELECT c.ancestor_pid, :pid, c.depth + 1 FROM {h-schema}sec_mgr_closure c WHERE c.descendant_pid = :parentPid";
+
+    // Paths from outside the subtree into it; the paths within the subtree are unaffected by the move
+    private static final String DETACH_SUBTREE =
+        "DELETE FROM {h-schema}sec_mgr_closure "
+        + "WHERE descendant_pid IN (SELECT s.descendant_pid FROM {h-schema}sec_mgr_closure s WHERE s.ancestor_pid = :pid) "
+        + "AND ancestor_pid NOT IN (SELECT s.descendant_pid FROM {h-schema}sec_mgr_closure s WHERE s.ancestor_pid = :pid)";
+
+    private static final String ATTACH_SUBTREE =
+        "INSERT INTO {h-schema}sec_mgr_closure (ancestor_pid, descendant_pid, depth) "
+        + "SELECT a.ancestor_pid, d.descendant_pid, a.depth + d.depth + 1 "
+        + "FROM {h-schema}sec_mgr_closure a CROSS JOIN {h-schema}sec_mgr_closure d "
+        + "WHERE a.descendant_pid = :parentPid AND d.ancestor_pid = :pid";
+
+    // Any fixed key serves; every re-parenting takes the same one
+    private static final int HIERARCHY_LOCK_KEY = "secdb.sec_mgr_closure".hashCode();
+
+    private static final String ADVISORY_LOCK = "SELECT 1 FROM pg_advisory_xact_lock(:key)";
+
+    private static final String LOCK_ROWS =
+        "SELECT m.pid FROM {h-schema}sec_mgr m WHERE m.pid IN (:pid, :parentPid) ORDER BY m.pid FOR UPDATE";
+
+    private static final String MISMATCHED_EDGES =
+        "SELECT (SELECT COUNT(*) FROM {h-schema}sec_mgr m WHERE m.subdeptof IS NOT NULL AND NOT EXISTS ("
+        + "SELECT 1 FROM {h-schema}sec_mgr_closure c WHERE c.ancestor_pid = m.subdeptof AND c.descendant_pid = m.pid AND c.depth = 1)) "
+        + "+ (SELECT COUNT(*) FROM {h-schema}sec_mgr_closure c WHERE c.depth = 1 AND NOT EXISTS ("
+        + "SELECT 1 FROM {h-schema}sec_mgr m WHERE m.pid = c.descendant_pid AND m.subdeptof = c.ancestor_pid))";
+
+    private static final String CLEAR = "DELETE FROM {h-schema}sec_mgr_closure";
+
+    private static final String REBUILD =
+        "INSERT INTO {h-schema}sec_mgr_closure (ancestor_pid, descendant_pid, depth) "
+        + "WITH RECURSIVE paths (ancestor_pid, descendant_pid, depth) AS ("
+        + "SELECT m.pid, m.pid, 0 FROM {h-schema}sec_mgr m "
+        + "UNION ALL "
+        + "SELECT p.ancestor_pid, c.pid, p.depth + 1 FROM paths p JOIN {h-schema}sec_mgr c ON c.subdeptof = p.descendant_pid "
+        + "WHERE p.depth < :maxDepth) "
+        + "SELECT ancestor_pid, descendant_pid, depth FROM paths";
+
+    @PersistenceContext(unitName = SecDbConfig.persistenceUnitName)
+    private EntityManager secEntityManager;
+
+    private volatile Boolean postgreSQL = null;
+
+    @Override
+    public void insertLeaf(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 parentPid) {
+        NativeQuery<Object> query = SiloNativeSql.statement(secEntityManager, INSERT_LEAF, SecDbManagerClosure.class);
+        SiloNativeSql.bindKey(query, "pid", pid);
+        SiloNativeSql.bindKey(query, "parentPid", parentPid);
+        query.executeUpdate();
+    }
+
+    @Override
+    public void moveSubtree(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 parentPid) {
+        NativeQuery<Object> detach = SiloNativeSql.statement(secEntityManager, DETACH_SUBTREE, SecDbManagerClosure.class);
+        SiloNativeSql.bindKey(detach, "pid", pid);
+        detach.executeUpdate();
+        if (parentPid != null) {
+            NativeQuery<Object> attach = SiloNativeSql.statement(secEntityManager, ATTACH_SUBTREE, SecDbManagerClosure.class);
+            SiloNativeSql.bindKey(attach, "pid", pid);
+            SiloNativeSql.bindKey(attach, "parentPid", parentPid);
+            attach.executeUpdate();
+        }
+    }
+
+    @Override
+    public void lockHierarchy(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 parentPid) {
+        if (isPostgreSQL()) {
+            NativeQuery<Object> lock = SiloNativeSql.statement(secEntityManager, ADVISORY_LOCK, SecDbManagerClosure.class);
+            SiloNativeSql.bindInteger(lock, "key", HIERARCHY_LOCK_KEY);
+            lock.getResultList();
+        }
+        else {
+            NativeQuery<Object> lock = SiloNativeSql.statement(secEntityManager, LOCK_ROWS, SecDbManager.class);
+            SiloNativeSql.bindKey(lock, "pid", pid);
+            SiloNativeSql.bindKey(lock, "parentPid", parentPid);
+            lock.getResultList();
+        }
+    }
+
+    @Override
+    public long countMismatchedEdges() {
+        Object count = SiloNativeSql.statement(secEntityManager, MISMATCHED_EDGES, SecDbManagerClosure.class).getSingleResult();
+        return ((Number)count).longValue();
+    }
+
+    @Override
+    public int rebuild(int maxDepth) {
+        SiloNativeSql.statement(secEntityManager, CLEAR, SecDbManagerClosure.class).executeUpdate();
+        NativeQuery<Object> query = SiloNativeSql.statement(secEntityManager, REBUILD, SecDbManagerClosure.class);
+        SiloNativeSql.bindInteger(query, "maxDepth", maxDepth);
+        return query.executeUpdate();
+    }
+
+    private boolean isPostgreSQL() {
+        if (postgreSQL == null) {
+            postgreSQL = secEntityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+        }
+        return postgreSQL;
+    }
+}
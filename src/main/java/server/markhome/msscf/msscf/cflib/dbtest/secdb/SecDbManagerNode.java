@@ -0,0 +1,118 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+/**
+ * Immutable snapshot of one manager in a department hierarchy, as loaded by a single recursive query.
+ * Unlike SecDbManager it carries no lazy associations, so walking it never touches the database.
+ */
+public final class SecDbManagerNode {
+
+    private final CFLibDbKeyHash256 pid;
+    private final CFLibDbKeyHash256 subDepartmentOfPid;
+    private final int depth;
+    private final String username;
+    private final String email;
+    private final String title;
+    private final String departmentCode;
+    private final List<SecDbManagerNode> departments;
+
+    public SecDbManagerNode(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 subDepartmentOfPid, int depth, String username, String email,
+        String title, String departmentCode, List<SecDbManagerNode> departments)
+    {
+        this.pid = pid;
+        this.subDepartmentOfPid = subDepartmentOfPid;
+        this.depth = depth;
+        this.username = username;
+        this.email = email;
+        this.title = title;
+        this.departmentCode = departmentCode;
+        this.departments = departments != null ? Collections.unmodifiableList(new ArrayList<>(departments)) : Collections.emptyList();
+    }
+
+    public CFLibDbKeyHash256 getPid() {
+        return pid;
+    }
+
+    public CFLibDbKeyHash256 getSubDepartmentOfPid() {
+        return subDepartmentOfPid;
+    }
+
+    /**
+     * Distance from the manager the query started at: levels below it for a subtree, levels above it for an ancestor chain.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDepartmentCode() {
+        return departmentCode;
+    }
+
+    /**
+     * Direct sub-departments, ordered by department code; empty for ancestor chain nodes.
+     */
+    public List<SecDbManagerNode> getDepartments() {
+        return departments;
+    }
+
+    /**
+     * Visits this node and every node below it, parents before children.
+     */
+    public void forEach(Consumer<SecDbManagerNode> visitor) {
+        visitor.accept(this);
+        for (SecDbManagerNode department : departments) {
+            department.forEach(visitor);
+        }
+    }
+
+    public int size() {
+        int count = 1;
+        for (SecDbManagerNode department : departments) {
+            count += department.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "SecDbManagerNode[" + departmentCode + " " + username + " depth=" + depth + " departments=" + departments.size() + "]";
+    }
+}
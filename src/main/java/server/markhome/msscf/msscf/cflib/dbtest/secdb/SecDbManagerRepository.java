@@ -21,11 +21,34 @@
 package server.markhome.msscf.msscf.cflib.dbtest.secdb;
 
 import java.util.List;
+import java.util.Optional;
+
+import org.hibernate.jpa.HibernateHints;
 
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.QueryHint;
 
-public interface SecDbManagerRepository extends JpaRepository<SecDbManager, CFLibDbKeyHash256> {
+public interface SecDbManagerRepository extends JpaRepository<SecDbManager, CFLibDbKeyHash256>, SecDbManagerRepositoryCustom {
     List<SecDbManager> findByEmail(String email);
     List<SecDbManager> findByMemberDeptCode(String memberDeptCode);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    Optional<SecDbManager> findByUsername(@Param("username") String username);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    List<SecDbManager> findByDepartmentCode(@Param("departmentCode") String departmentCode);
+
+    // Keyset pages: rows whose pid sorts after the previous page's last pid, in pid order
+
+    @Query("select m from SecDbManager m where m.email = :email and m.pid.bytes > :after order by m.pid.bytes")
+    List<SecDbManager> findByEmailAfter(@Param("email") String email, @Param("after") byte[] after, Limit limit);
+
+    @Query("select m from SecDbManager m where m.memberDeptCode = :memberDeptCode and m.pid.bytes > :after order by m.pid.bytes")
+    List<SecDbManager> findByMemberDeptCodeAfter(@Param("memberDeptCode") String memberDeptCode, @Param("after") byte[] after, Limit limit);
 }
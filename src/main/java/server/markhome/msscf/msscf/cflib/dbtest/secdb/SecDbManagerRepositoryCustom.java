@@ -0,0 +1,53 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.util.List;
+import java.util.Map;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public interface SecDbManagerRepositoryCustom {
+    /**
+     * Inserts the sec_user and sec_mgr rows of data in a single statement, guarded by ON CONFLICT (pid) DO NOTHING.
+     * Returns true when the rows were inserted, false when a user with that pid already existed.
+     */
+    boolean insertIfAbsent(SecDbManager data);
+
+    /**
+     * Updates only the changed attributes of the row identified by pid, without reading it first; as a JOINED
+     * entity this is a multi-table mutation (see SiloPatches).
+     * Returns the number of rows updated.
+     */
+    int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes);
+
+    /**
+     * Loads pid and every manager beneath it, down to maxDepth levels, with one recursive query.
+     * Returns null when pid is not a manager.
+     */
+    SecDbManagerNode loadSubtree(CFLibDbKeyHash256 pid, int maxDepth);
+
+    /**
+     * Loads pid and its chain of subDepartmentOf managers up to the root (at most maxDepth levels) with one
+     * recursive query, ordered from pid upwards.  Returns an empty list when pid is not a manager.
+     */
+    List<SecDbManagerNode> loadAncestors(CFLibDbKeyHash256 pid, int maxDepth);
+}
@@ -0,0 +1,150 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.query.NativeQuery;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloPatches;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class SecDbManagerRepositoryCustomImpl implements SecDbManagerRepositoryCustom {
+
+    // The sec_mgr insert only sees a row from the CTE when the sec_user insert did not conflict
+    private static final String INSERT_IF_ABSENT =
+        "WITH u AS ("
+        + "INSERT INTO {h-schema}sec_user (pid, user_type, username, email, member_deptcode, created_at, created_by, updated_at, updated_by) "
+        + "VALUES (:pid, 1, :username, :email, :memberDeptCode, :createdAt, :createdBy, :updatedAt, :updatedBy) "
+        + "ON CONFLICT (pid) DO NOTHING RETURNING pid) "
+        + "INSERT INTO {h-schema}sec_mgr (pid, title, deptcode, subdeptof) "
+        + "SELECT u.pid, :title, :deptCode, :subDeptOf FROM u";
+
+    // maxDepth bounds the recursion should a re-parenting ever introduce a cycle
+    private static final String SUBTREE =
+        "WITH RECURSIVE tree (pid, subdeptof, depth) AS ("
+        + "SELECT m.pid, m.subdeptof, 0 FROM {h-schema}sec_mgr m WHERE m.pid = :pid "
+        + "UNION ALL "
+        + "SELECT c.pid, c.subdeptof, t.depth + 1 FROM {h-schema}sec_mgr c JOIN tree t ON c.subdeptof = t.pid WHERE t.depth < :maxDepth) "
+        + "SELECT t.pid, t.subdeptof, t.depth, u.username, u.email, m.title, m.deptcode "
+        + "FROM tree t JOIN {h-schema}sec_user u ON u.pid = t.pid JOIN {h-schema}sec_mgr m ON m.pid = t.pid "
+        + "ORDER BY t.depth, m.deptcode";
+
+    private static final String ANCESTORS =
+        "WITH RECURSIVE chain (pid, subdeptof, depth) AS ("
+        + "SELECT m.pid, m.subdeptof, 0 FROM {h-schema}sec_mgr m WHERE m.pid = :pid "
+        + "UNION ALL "
+        + "SELECT p.pid, p.subdeptof, c.depth + 1 FROM {h-schema}sec_mgr p JOIN chain c ON p.pid = c.subdeptof WHERE c.depth < :maxDepth) "
+        + "SELECT c.pid, c.subdeptof, c.depth, u.username, u.email, m.title, m.deptcode "
+        + "FROM chain c JOIN {h-schema}sec_user u ON u.pid = c.pid JOIN {h-schema}sec_mgr m ON m.pid = c.pid "
+        + "ORDER BY c.depth";
+
+    public static final Set<String> PATCHABLE = Set.of("username", "email", "memberDeptCode", "updatedBy", "title", "departmentCode", "subDepartmentOf");
+
+    @PersistenceContext(unitName = SecDbConfig.persistenceUnitName)
+    private EntityManager secEntityManager;
+
+    @Override
+    public boolean insertIfAbsent(SecDbManager data) {
+        NativeQuery<Object> query = SiloNativeSql.statement(secEntityManager, INSERT_IF_ABSENT, SecDbManager.class);
+        SiloNativeSql.bindKey(query, "pid", data.getPid());
+        SiloNativeSql.bindString(query, "username", data.getUsername());
+        SiloNativeSql.bindString(query, "email", data.getEmail());
+        SiloNativeSql.bindString(query, "memberDeptCode", data.getMemberDeptCode());
+        SiloNativeSql.bindTimestamp(query, "createdAt", data.getCreatedAt());
+        SiloNativeSql.bindKey(query, "createdBy", data.getCreatedBy());
+        SiloNativeSql.bindTimestamp(query, "updatedAt", data.getUpdatedAt());
+        SiloNativeSql.bindKey(query, "updatedBy", data.getUpdatedBy());
+        SiloNativeSql.bindString(query, "title", data.getTitle());
+        SiloNativeSql.bindString(query, "deptCode", data.getDepartmentCode());
+        SiloNativeSql.bindKey(query, "subDeptOf", data.getSubDepartmentOf() != null ? data.getSubDepartmentOf().getPid() : null);
+        return query.executeUpdate() > 0;
+    }
+
+    @Override
+    public int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes) {
+        return SiloPatches.patch(secEntityManager, SecDbManager.class, pid, changes, PATCHABLE, true);
+    }
+
+    @Override
+    public SecDbManagerNode loadSubtree(CFLibDbKeyHash256 pid, int maxDepth) {
+        List<Object[]> rows = hierarchy(SUBTREE, pid, maxDepth);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        // Rows arrive parents first, so each node's children are known before the tree is assembled bottom-up
+        Map<CFLibDbKeyHash256, List<Object[]>> childRows = new HashMap<>();
+        for (Object[] row : rows) {
+            CFLibDbKeyHash256 parent = SiloNativeSql.toKey(row[1]);
+            if (parent != null) {
+                childRows.computeIfAbsent(parent, (key) -> new ArrayList<>()).add(row);
+            }
+        }
+        return toNode(rows.get(0), childRows);
+    }
+
+    @Override
+    public List<SecDbManagerNode> loadAncestors(CFLibDbKeyHash256 pid, int maxDepth) {
+        List<SecDbManagerNode> chain = new ArrayList<>();
+        for (Object[] row : hierarchy(ANCESTORS, pid, maxDepth)) {
+            chain.add(toNode(row, null));
+        }
+        return chain;
+    }
+
+    private List<Object[]> hierarchy(String sql, CFLibDbKeyHash256 pid, int maxDepth) {
+        NativeQuery<Object> query = SiloNativeSql.statement(secEntityManager, sql, SecDbManager.class);
+        SiloNativeSql.bindKey(query, "pid", pid);
+        SiloNativeSql.bindInteger(query, "maxDepth", maxDepth);
+        List<Object[]> rows = new ArrayList<>();
+        for (Object row : query.getResultList()) {
+            rows.add((Object[])row);
+        }
+        return rows;
+    }
+
+    private static SecDbManagerNode toNode(Object[] row, Map<CFLibDbKeyHash256, List<Object[]>> childRows) {
+        CFLibDbKeyHash256 pid = SiloNativeSql.toKey(row[0]);
+        int depth = ((Number)row[2]).intValue();
+        List<SecDbManagerNode> departments = new ArrayList<>();
+        if (childRows != null) {
+            List<Object[]> children = childRows.get(pid);
+            if (children != null) {
+                for (Object[] child : children) {
+                    // Only the next level down, so a cycle cannot recurse past maxDepth
+                    if (((Number)child[2]).intValue() == depth + 1) {
+                        departments.add(toNode(child, childRows));
+                    }
+                }
+            }
+        }
+        return new SecDbManagerNode(pid, SiloNativeSql.toKey(row[1]), depth,
+            (String)row[3], (String)row[4], (String)row[5], (String)row[6], departments);
+    }
+}
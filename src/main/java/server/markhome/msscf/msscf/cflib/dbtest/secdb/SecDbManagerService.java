@@ -22,19 +22,33 @@ package server.markhome.msscf.msscf.cflib.dbtest.secdb;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
 
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import server.markhome.msscf.msscf.cflib.dbtest.common.BatchResult;
+import server.markhome.msscf.msscf.cflib.dbtest.common.KeysetPage;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloBatches;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.PersistenceContext;
 
 @Service("SecDbManagerService")
 public class SecDbManagerService {
@@ -46,29 +60,45 @@ public class SecDbManagerService {
     @Autowired
     private SecDbManagerRepository secDbManagerRepository;
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Autowired
+    private SecDbUserRefCache secDbUserRefCache;
+
+    @Autowired
+    private SecDbManagerClosureRepository secDbManagerClosureRepository;
+
+    @PersistenceContext(unitName = SecDbConfig.persistenceUnitName)
+    private EntityManager secEntityManager;
+
+    @Autowired
+    @Qualifier("secTransactionManager")
+    private PlatformTransactionManager secTransactionManager;
+
+    @Autowired
+    @Qualifier("secJpaProperties")
+    private Properties secJpaProperties;
+
+    private volatile Boolean insertIfAbsentEnabled = null;
+
+    private volatile Integer hierarchyMaxDepth = null;
+
+    // Why sec_mgr_closure cannot be trusted, or null while it can
+    private volatile String hierarchyUnusable = null;
+
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public SecDbUser find(CFLibDbKeyHash256 pid) {
         return secDbManagerRepository.findById(pid).orElse(null);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public SecDbUser findByName(String name) {
         if (name == null || name.isEmpty()) {
             return null;
         }
-        SecDbManager probe = new SecDbManager();
-        probe.setUsername(name);
-
-        ExampleMatcher matcher = ExampleMatcher.matching()
-            .withIgnoreNullValues()
-            .withMatcher("username", ExampleMatcher.GenericPropertyMatchers.exact());
-
-        Example<SecDbManager> example = Example.of(probe, matcher);
-
-        return secDbManagerRepository.findOne(example).orElse(null);
+        // Served from the query cache and the user region once warm
+        return secDbManagerRepository.findByUsername(name).orElse(null);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public List<SecDbUser> findByEmail(String email) {
         if (email == null || email.isEmpty()) {
             return new ArrayList<>();
@@ -78,7 +108,7 @@ public class SecDbManagerService {
         return t;
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public List<SecDbUser> findByMemberDeptCode(String memberDeptCode) {
         if (memberDeptCode == null || memberDeptCode.isEmpty()) {
             return new ArrayList<>();
@@ -88,23 +118,103 @@ public class SecDbManagerService {
         return t;
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    /**
+     * One keyset page of the managers with the given email, in pid order.
+     * Pass null as pageToken for the first page, then the previous page's getNextToken().
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public KeysetPage<SecDbManager> findByEmail(String email, String pageToken, int pageSize) {
+        KeysetPage.checkPageSize(pageSize);
+        if (email == null || email.isEmpty()) {
+            return new KeysetPage<>(new ArrayList<>(), null);
+        }
+        List<SecDbManager> fetched = secDbManagerRepository.findByEmailAfter(email, KeysetPage.decodeToken(pageToken), Limit.of(pageSize + 1));
+        return KeysetPage.of(fetched, pageSize, SecDbManager::getPid);
+    }
+
+    /**
+     * One keyset page of the managers who are members of a department, in pid order.
+     * Pass null as pageToken for the first page, then the previous page's getNextToken().
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public KeysetPage<SecDbManager> findByMemberDeptCode(String memberDeptCode, String pageToken, int pageSize) {
+        KeysetPage.checkPageSize(pageSize);
+        if (memberDeptCode == null || memberDeptCode.isEmpty()) {
+            return new KeysetPage<>(new ArrayList<>(), null);
+        }
+        List<SecDbManager> fetched = secDbManagerRepository.findByMemberDeptCodeAfter(memberDeptCode, KeysetPage.decodeToken(pageToken), Limit.of(pageSize + 1));
+        return KeysetPage.of(fetched, pageSize, SecDbManager::getPid);
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public List<SecDbManager> findByDeptCode(String deptCode) {
         if (deptCode == null || deptCode.isEmpty()) {
             return null;
         }
-        SecDbManager probe = new SecDbManager();
-        probe.setDepartmentCode(deptCode);
+        return secDbManagerRepository.findByDepartmentCode(deptCode);
+    }
+    
+    /**
+     * The manager and every department beneath it as an immutable tree, loaded with one recursive query.
+     * Returns null when pid is not a manager.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public SecDbManagerNode getSubtree(CFLibDbKeyHash256 pid) {
+        if (pid == null || pid.isNull()) {
+            return null;
+        }
+        return secDbManagerRepository.loadSubtree(pid, getHierarchyMaxDepth());
+    }
 
-        ExampleMatcher matcher = ExampleMatcher.matching()
-            .withIgnoreNullValues()
-            .withMatcher("deptcode", ExampleMatcher.GenericPropertyMatchers.exact());
+    /**
+     * The manager followed by each department it reports up through, ending at the root, loaded with one recursive query.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public List<SecDbManagerNode> getAncestorChain(CFLibDbKeyHash256 pid) {
+        if (pid == null || pid.isNull()) {
+            return new ArrayList<>();
+        }
+        return secDbManagerRepository.loadAncestors(pid, getHierarchyMaxDepth());
+    }
 
-        Example<SecDbManager> example = Example.of(probe, matcher);
+    /**
+     * Whether descendant sits somewhere beneath ancestor's department; one primary key probe of the closure table.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public boolean isAncestorOf(CFLibDbKeyHash256 ancestor, CFLibDbKeyHash256 descendant) {
+        if (ancestor == null || ancestor.isNull() || descendant == null || descendant.isNull() || ancestor.equals(descendant)) {
+            return false;
+        }
+        requireHierarchy();
+        return secDbManagerClosureRepository.existsById(new SecDbManagerClosureId(ancestor, descendant));
+    }
 
-        return secDbManagerRepository.findAll(example);
+    /**
+     * The pids of every manager beneath ancestor's department, nearest first; one index range scan of the closure table.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public List<CFLibDbKeyHash256> descendantsOf(CFLibDbKeyHash256 ancestor) {
+        if (ancestor == null || ancestor.isNull()) {
+            return new ArrayList<>();
+        }
+        requireHierarchy();
+        return secDbManagerClosureRepository.findDescendantPids(ancestor);
     }
-    
+
+    /**
+     * Makes isAncestorOf() and descendantsOf() throw an IllegalStateException carrying reason until restart,
+     * for when sec_mgr_closure is known to disagree with the managers' links.
+     */
+    public void markHierarchyUnusable(String reason) {
+        System.err.println("ERROR: SecDbManagerService hierarchy queries disabled - " + reason);
+        hierarchyUnusable = reason;
+    }
+
+    /**
+     * Stores data unless a row with its pid already exists, in which case the stored row is returned instead.
+     * When create.insert-if-absent is in effect the new row is written by one native INSERT and data itself is
+     * returned, detached: later changes to it are not flushed, so pass it to update() to change the row.
+     */
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public SecDbManager create(SecDbManager data) {
         if (data == null) {
@@ -121,12 +231,23 @@ public class SecDbManagerService {
             data.setCreatedAt(now);
             data.setUpdatedAt(now);
 
-            // Check if already exists
+            if (isInsertIfAbsentEnabled()) {
+                // One INSERT ... ON CONFLICT (pid) DO NOTHING; only a conflicting pid costs a second read
+                if (secDbManagerRepository.insertIfAbsent(data)) {
+                    secDbManagerClosureRepository.insertLeaf(data.getPid(), parentPidOf(data));
+                    return data;
+                }
+                return secDbManagerRepository.findById(data.getPid()).orElse(null);
+            }
+
+            // Check if already exists (portable fallback for dialects without ON CONFLICT)
             if (data.getPid() != null && secDbManagerRepository.existsById(data.getPid())) {
                 return secDbManagerRepository.findById(data.getPid()).orElse(null);
             }
 
-            return secDbManagerRepository.save(data);
+            SecDbManager saved = secDbManagerRepository.save(data);
+            secDbManagerClosureRepository.insertLeaf(saved.getPid(), parentPidOf(saved));
+            return saved;
         } catch (Exception e) {
             // Remove auto-generated pid if there was an error
             if (generatedPid) {
@@ -152,6 +273,182 @@ public class SecDbManagerService {
         SecDbManager existing = secDbManagerRepository.findById(data.getPid())
             .orElseThrow(() -> new NoResultException("SecDbManager with pid " + data.getPid() + " does not exist"));
 
+        if (!Objects.equals(parentPidOf(existing), parentPidOf(data))) {
+            reparent(existing.getPid(), parentPidOf(data));
+        }
+        applyUpdate(existing, data, LocalDateTime.now());
+        secDbUserRefCache.invalidate(existing.getPid());
+
+        return secDbManagerRepository.save(existing);
+    }
+
+    /**
+     * Changes only the given attributes of the row identified by pid without reading the row first, updatedAt
+     * is stamped as update() does.  Attribute names are the entity's field names.  As the attributes span sec_user
+     * and sec_mgr, Hibernate issues a multi-table mutation that selects the pid once and then updates each table
+     * holding a changed column, rather than a single UPDATE.  An instance of the row already loaded in the current
+     * transaction is refreshed (see SiloPatches).
+     */
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes) {
+        if (pid == null || pid.isNull()) {
+            throw new IllegalArgumentException("Cannot patch SecDbManager with null primary identifier (pid)");
+        }
+        if (changes == null || changes.isEmpty()) {
+            return 0;
+        }
+        int count = secDbManagerRepository.patch(pid, changes);
+        if (count == 0) {
+            throw new NoResultException("SecDbManager with pid " + pid + " does not exist");
+        }
+        if (changes.containsKey("subDepartmentOf")) {
+            Object parent = changes.get("subDepartmentOf");
+            reparent(pid, parent instanceof SecDbManager ? ((SecDbManager)parent).getPid() : null);
+        }
+        secDbUserRefCache.invalidate(pid);
+        return count;
+    }
+
+    /**
+     * Creates the rows in JDBC batches of hibernate.jdbc.batch_size, one transaction per batch.
+     * Rows whose pid already exists are returned as stored, as create() does, but existence is probed
+     * once per batch rather than once per row.  A manager's subDepartmentOf must be stored already or
+     * appear in the same or an earlier batch.
+     * A pid repeated within a batch is created once and its later occurrences are returned as that row.
+     * The pids and timestamps stamped on the rows of a batch that rolls back are reverted.
+     */
+    public BatchResult<SecDbManager> createAll(Collection<SecDbManager> data) {
+        return SiloBatches.run(secTransactionManager, "SecDbManagerService.createAll", data, SiloBatches.batchSize(secJpaProperties), (batch, undo) -> {
+            LocalDateTime now = LocalDateTime.now();
+            for (SecDbManager row : batch) {
+                CFLibDbKeyHash256 pid = row.getPid();
+                LocalDateTime createdAt = row.getCreatedAt();
+                LocalDateTime updatedAt = row.getUpdatedAt();
+                undo.record(() -> {
+                    row.setPid(pid);
+                    row.setCreatedAt(createdAt);
+                    row.setUpdatedAt(updatedAt);
+                });
+                if (row.getPid() == null) {
+                    row.setPid(new CFLibDbKeyHash256(0));
+                }
+                row.setCreatedAt(now);
+                row.setUpdatedAt(now);
+            }
+            Map<CFLibDbKeyHash256, SecDbManager> existing = SiloBatches.indexBy(
+                secDbManagerRepository.findAllById(SiloBatches.keysOf(batch, SecDbManager::getPid)), SecDbManager::getPid);
+            List<SecDbManager> stored = new ArrayList<>(batch.size());
+            List<SecDbManager> created = new ArrayList<>(batch.size());
+            for (SecDbManager row : batch) {
+                SecDbManager found = existing.get(row.getPid());
+                if (found != null) {
+                    stored.add(found);
+                }
+                else {
+                    secEntityManager.persist(row);
+                    // A pid repeated later in the batch is returned as this row rather than persisted twice
+                    existing.put(row.getPid(), row);
+                    created.add(row);
+                    stored.add(row);
+                }
+            }
+            insertLeaves(created);
+            return stored;
+        });
+    }
+
+    /**
+     * Updates the rows in JDBC batches of hibernate.jdbc.batch_size, one transaction per batch.
+     * A missing pid fails its whole batch with a NoResultException.
+     */
+    public BatchResult<SecDbManager> updateAll(Collection<SecDbManager> data) {
+        return SiloBatches.run(secTransactionManager, "SecDbManagerService.updateAll", data, SiloBatches.batchSize(secJpaProperties), (batch) -> {
+            for (SecDbManager row : batch) {
+                if (row.getPid() == null || row.getPid().isNull()) {
+                    throw new IllegalArgumentException("Cannot update SecDbManager with null primary identifier (pid)");
+                }
+            }
+            LocalDateTime now = LocalDateTime.now();
+            Map<CFLibDbKeyHash256, SecDbManager> existing = SiloBatches.indexBy(
+                secDbManagerRepository.findAllById(SiloBatches.keysOf(batch, SecDbManager::getPid)), SecDbManager::getPid);
+            List<SecDbManager> stored = new ArrayList<>(batch.size());
+            for (SecDbManager row : batch) {
+                SecDbManager target = existing.get(row.getPid());
+                if (target == null) {
+                    throw new NoResultException("SecDbManager with pid " + row.getPid() + " does not exist");
+                }
+                if (!Objects.equals(parentPidOf(target), parentPidOf(row))) {
+                    reparent(target.getPid(), parentPidOf(row));
+                }
+                applyUpdate(target, row, now);
+                secDbUserRefCache.invalidate(target.getPid());
+                stored.add(target);
+            }
+            return stored;
+        });
+    }
+
+    private static CFLibDbKeyHash256 parentPidOf(SecDbManager manager) {
+        return manager.getSubDepartmentOf() != null ? manager.getSubDepartmentOf().getPid() : null;
+    }
+
+    private void reparent(CFLibDbKeyHash256 pid, CFLibDbKeyHash256 parentPid) {
+        // Held until commit, so a concurrent re-parenting cannot pass the same check and close a cycle
+        secDbManagerClosureRepository.lockHierarchy(pid, parentPid);
+        if (parentPid != null && secDbManagerClosureRepository.existsById(new SecDbManagerClosureId(pid, parentPid))) {
+            throw new IllegalArgumentException("SecDbManagerService cannot make " + parentPid.toString() + " the parent of " + pid.toString() +
+                " because it is within that manager's own department");
+        }
+        secDbManagerClosureRepository.moveSubtree(pid, parentPid);
+    }
+
+    /**
+     * Adds the closure rows of newly persisted managers, parents before the children created alongside them.
+     */
+    private void insertLeaves(List<SecDbManager> created) {
+        Set<CFLibDbKeyHash256> pending = new HashSet<>(SiloBatches.keysOf(created, SecDbManager::getPid));
+        List<SecDbManager> remaining = new ArrayList<>(created);
+        while (!remaining.isEmpty()) {
+            boolean progress = false;
+            Iterator<SecDbManager> iter = remaining.iterator();
+            while (iter.hasNext()) {
+                SecDbManager row = iter.next();
+                CFLibDbKeyHash256 parentPid = parentPidOf(row);
+                if (parentPid == null || !pending.contains(parentPid)) {
+                    secDbManagerClosureRepository.insertLeaf(row.getPid(), parentPid);
+                    pending.remove(row.getPid());
+                    iter.remove();
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                throw new IllegalArgumentException("SecDbManagerService.createAll() batch contains a subDepartmentOf cycle");
+            }
+        }
+    }
+
+    private void requireHierarchy() {
+        String reason = hierarchyUnusable;
+        if (reason != null) {
+            throw new IllegalStateException("sec_mgr_closure is unusable - " + reason);
+        }
+    }
+
+    private int getHierarchyMaxDepth() {
+        if (hierarchyMaxDepth == null) {
+            hierarchyMaxDepth = Integer.parseInt(DbTest.getMergedProperties().getProperty("secdb.manager.hierarchy.max-depth", "64").trim());
+        }
+        return hierarchyMaxDepth;
+    }
+
+    private boolean isInsertIfAbsentEnabled() {
+        if (insertIfAbsentEnabled == null) {
+            insertIfAbsentEnabled = SiloNativeSql.isInsertIfAbsentEnabled(DbTest.getMergedProperties(), "secdb");
+        }
+        return insertIfAbsentEnabled;
+    }
+
+    private void applyUpdate(SecDbManager existing, SecDbManager data, LocalDateTime now) {
         // Update fields (except pid, createdAt)
         existing.setUsername(data.getUsername());
         existing.setEmail(data.getEmail());
@@ -159,8 +456,6 @@ public class SecDbManagerService {
         existing.setSubDepartmentOf(data.getSubDepartmentOf());
         existing.setTitle(data.getTitle());
         // ... update other fields as needed ...
-        existing.setUpdatedAt(LocalDateTime.now());
-
-        return secDbManagerRepository.save(existing);
+        existing.setUpdatedAt(now);
     }
 }
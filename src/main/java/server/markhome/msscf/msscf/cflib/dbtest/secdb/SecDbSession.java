@@ -22,7 +22,10 @@ package server.markhome.msscf.msscf.cflib.dbtest.secdb;
 
 import java.time.LocalDateTime;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
@@ -31,10 +34,29 @@ import jakarta.persistence.*;
 import jakarta.transaction.Transactional;
 
 @Entity
-@Table(name = "sec_sess", schema = "secdb")
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecDbSession.CACHE_REGION)
+@NamedQuery(name = "SecDbSession.findBySecUserPid",
+    query = "select s from SecDbSession s where s.secUser.pid = :secUserPid")
+@NamedQuery(name = "SecDbSession.findActiveBySecUserPid",
+    query = "select s from SecDbSession s where s.secUser.pid = :secUserPid and s.terminatedAt is null")
+@NamedQuery(name = "SecDbSession.findByUserWithUser",
+    query = "select s from SecDbSession s join fetch s.secUser u where u.pid = :secUserPid")
+@NamedQuery(name = "SecDbSession.countActiveBySecUserPid",
+    query = "select count(s) from SecDbSession s where s.secUser.pid = :secUserPid and s.terminatedAt is null")
+@NamedEntityGraph(name = SecDbSession.WITH_USER_GRAPH, attributeNodes = @NamedAttributeNode("secUser"))
+@Table(name = "sec_sess", schema = "secdb",
+    indexes = {
+        @Index(name = "sec_sess_dxuser", columnList = "secuser_pid", unique = false)
+    }
+)
 @Transactional(Transactional.TxType.SUPPORTS)
 @PersistenceContext(unitName = "SecDbPU")
 public class SecDbSession {
+    public static final String CACHE_REGION = "session";
+    /** Fetches secUser, with its sec_mgr columns, in the same statement as the sessions. */
+    public static final String WITH_USER_GRAPH = "SecDbSession.withUser";
     public final static int SESS_CREATE_INFO_LEN = 1024;
     public final static int SESS_TERMINATION_INFO_LEN = 1024;
 
@@ -117,6 +139,14 @@ public class SecDbSession {
         this.secUser = secUser;
     }
 
+    public String getSessCreateInfo() {
+        return sessCreateInfo;
+    }
+
+    public void setSessCreateInfo(String sessCreateInfo) {
+        this.sessCreateInfo = sessCreateInfo;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
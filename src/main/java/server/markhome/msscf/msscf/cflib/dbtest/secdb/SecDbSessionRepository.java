@@ -20,8 +20,56 @@
  */
 package server.markhome.msscf.msscf.cflib.dbtest.secdb;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface SecDbSessionRepository extends JpaRepository<SecDbSession, CFLibDbKeyHash256>, SecDbSessionRepositoryCustom {
+
+    /** Named query SecDbSession.findBySecUserPid; compares the foreign key without joining sec_user. */
+    List<SecDbSession> findBySecUserPid(@Param("secUserPid") CFLibDbKeyHash256 secUserPid);
+
+    /** Named query SecDbSession.findByUserWithUser; joins and fetches secUser so touching it issues no further statement. */
+    List<SecDbSession> findByUserWithUser(@Param("secUserPid") CFLibDbKeyHash256 secUserPid);
+
+    /** Active sessions, oldest first, at most limit of them, each fetched together with its user. */
+    @EntityGraph(SecDbSession.WITH_USER_GRAPH)
+    @Query("select s from SecDbSession s where s.terminatedAt is null order by s.createdAt, s.pid.bytes")
+    List<SecDbSession> findActiveWithUsers(Limit limit);
+
+    /** Named query SecDbSession.findActiveBySecUserPid; on PostgreSQL it is served by the sec_sess_dxactive partial index. */
+    List<SecDbSession> findActiveBySecUserPid(@Param("secUserPid") CFLibDbKeyHash256 secUserPid);
+
+    /** Named query SecDbSession.countActiveBySecUserPid. */
+    long countActiveBySecUserPid(@Param("secUserPid") CFLibDbKeyHash256 secUserPid);
+
+    boolean existsBySecUserPidAndTerminatedAtIsNull(CFLibDbKeyHash256 secUserPid);
+
+    /** Stops at the first active session rather than counting them all. */
+    default boolean existsActiveBySecUserPid(CFLibDbKeyHash256 secUserPid) {
+        return existsBySecUserPidAndTerminatedAtIsNull(secUserPid);
+    }
+
+    @Modifying(flushAutomatically = true)
+    @Query("update SecDbSession s set s.terminatedAt = :terminatedAt, s.sessTerminationInfo = :sessTerminationInfo where s.pid = :pid")
+    int terminate(@Param("pid") CFLibDbKeyHash256 pid, @Param("terminatedAt") LocalDateTime terminatedAt,
+        @Param("sessTerminationInfo") String sessTerminationInfo);
+
+    /** Pids of sessions created before cutoff that were never terminated, at most limit of them. */
+    @Query("select s.pid from SecDbSession s where s.terminatedAt is null and s.createdAt < :cutoff")
+    List<CFLibDbKeyHash256> findStalePids(@Param("cutoff") LocalDateTime cutoff, Limit limit);
 
-public interface SecDbSessionRepository extends JpaRepository<SecDbSession, CFLibDbKeyHash256> {
+    /** Terminates the listed sessions in one UPDATE, skipping any terminated since they were selected. */
+    @Modifying
+    @Query("update SecDbSession s set s.terminatedAt = :terminatedAt, s.sessTerminationInfo = :sessTerminationInfo where s.pid in :pids and s.terminatedAt is null")
+    int terminateAll(@Param("pids") Collection<CFLibDbKeyHash256> pids, @Param("terminatedAt") LocalDateTime terminatedAt,
+        @Param("sessTerminationInfo") String sessTerminationInfo);
 }
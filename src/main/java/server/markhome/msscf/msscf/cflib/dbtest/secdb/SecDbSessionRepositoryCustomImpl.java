@@ -0,0 +1,71 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.hibernate.query.NativeQuery;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloPatches;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloStreams;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class SecDbSessionRepositoryCustomImpl implements SecDbSessionRepositoryCustom {
+
+    private static final String INSERT_IF_ABSENT =
+        "INSERT INTO {h-schema}sec_sess (pid, secuser_pid, sess_cr_info, created_at, sess_term_info, terminated_at) "
+        + "VALUES (:pid, :secUserPid, :sessCreateInfo, :createdAt, :sessTerminationInfo, :terminatedAt) "
+        + "ON CONFLICT (pid) DO NOTHING";
+
+    public static final Set<String> PATCHABLE = Set.of("sessTerminationInfo", "terminatedAt");
+
+    @PersistenceContext(unitName = SecDbConfig.persistenceUnitName)
+    private EntityManager secEntityManager;
+
+    @Override
+    public boolean insertIfAbsent(SecDbSession data) {
+        NativeQuery<Object> query = SiloNativeSql.statement(secEntityManager, INSERT_IF_ABSENT, SecDbSession.class);
+        SiloNativeSql.bindKey(query, "pid", data.getPid());
+        SiloNativeSql.bindKey(query, "secUserPid", data.getSecUser() != null ? data.getSecUser().getPid() : null);
+        SiloNativeSql.bindString(query, "sessCreateInfo", data.getSessCreateInfo());
+        SiloNativeSql.bindTimestamp(query, "createdAt", data.getCreatedAt());
+        SiloNativeSql.bindString(query, "sessTerminationInfo", data.getSessTerminationInfo());
+        SiloNativeSql.bindTimestamp(query, "terminatedAt", data.getTerminatedAt());
+        return query.executeUpdate() > 0;
+    }
+
+    @Override
+    public int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes) {
+        return SiloPatches.patch(secEntityManager, SecDbSession.class, pid, changes, PATCHABLE, false);
+    }
+
+    @Override
+    public Stream<SecDbSession> streamAll(int fetchSize) {
+        return SiloStreams.detaching(secEntityManager, SecDbSession.class, "select x from SecDbSession x join fetch x.secUser", fetchSize,
+            SecDbSession::getSecUser);
+    }
+}
@@ -21,19 +21,33 @@
 package server.markhome.msscf.msscf.cflib.dbtest.secdb;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import server.markhome.msscf.msscf.cflib.dbtest.common.BatchResult;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloBatches;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloStreams;
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.PersistenceContext;
 
 @Service("SecDbSessionService")
 public class SecDbSessionService {
@@ -45,28 +59,86 @@ public class SecDbSessionService {
     @Autowired
     private SecDbSessionRepository secDbSessionRepository;
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @PersistenceContext(unitName = SecDbConfig.persistenceUnitName)
+    private EntityManager secEntityManager;
+
+    @Autowired
+    @Qualifier("secTransactionManager")
+    private PlatformTransactionManager secTransactionManager;
+
+    @Autowired
+    @Qualifier("secJpaProperties")
+    private Properties secJpaProperties;
+
+    private volatile Boolean insertIfAbsentEnabled = null;
+
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public SecDbSession find(CFLibDbKeyHash256 pid) {
         return secDbSessionRepository.findById(pid).orElse(null);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public List<SecDbSession> findByUser(SecDbUser user) {
         if (user == null || user.getPid() == null || user.getPid().isNull()) {
             return null;
         }
-        SecDbSession probe = new SecDbSession();
-        probe.setSecUser(user);
+        return secDbSessionRepository.findBySecUserPid(user.getPid());
+    }
 
-        ExampleMatcher matcher = ExampleMatcher.matching()
-            .withIgnoreNullValues()
-            .withMatcher("secuser_pid", ExampleMatcher.GenericPropertyMatchers.exact());
+    /**
+     * The user's sessions with secUser already loaded, in one statement.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public List<SecDbSession> findByUserWithUser(SecDbUser user) {
+        if (user == null || user.getPid() == null || user.getPid().isNull()) {
+            return new ArrayList<>();
+        }
+        return secDbSessionRepository.findByUserWithUser(user.getPid());
+    }
 
-        Example<SecDbSession> example = Example.of(probe, matcher);
+    /**
+     * Up to limit active sessions across all users, oldest first, with secUser already loaded, in one statement.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public List<SecDbSession> findActiveWithUsers(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("SecDbSessionService.findActiveWithUsers() limit must be positive");
+        }
+        return secDbSessionRepository.findActiveWithUsers(Limit.of(limit));
+    }
 
-        return secDbSessionRepository.findAll(example);
+    /**
+     * The user's sessions that have not been terminated.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public List<SecDbSession> findActiveByUser(SecDbUser user) {
+        if (user == null || user.getPid() == null || user.getPid().isNull()) {
+            return new ArrayList<>();
+        }
+        return secDbSessionRepository.findActiveBySecUserPid(user.getPid());
     }
 
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public long countActiveByUser(SecDbUser user) {
+        if (user == null || user.getPid() == null || user.getPid().isNull()) {
+            return 0L;
+        }
+        return secDbSessionRepository.countActiveBySecUserPid(user.getPid());
+    }
+
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public boolean existsActiveByUser(SecDbUser user) {
+        if (user == null || user.getPid() == null || user.getPid().isNull()) {
+            return false;
+        }
+        return secDbSessionRepository.existsActiveBySecUserPid(user.getPid());
+    }
+
+    /**
+     * Stores data unless a row with its pid already exists, in which case the stored row is returned instead.
+     * When create.insert-if-absent is in effect the new row is written by one native INSERT and data itself is
+     * returned, detached: later changes to it are not flushed, so pass it to update() to change the row.
+     */
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public SecDbSession create(SecDbSession data) {
         if (data == null) {
@@ -82,7 +154,15 @@ public class SecDbSessionService {
             LocalDateTime now = LocalDateTime.now();
             data.setCreatedAt(now);
 
-            // Check if already exists
+            if (isInsertIfAbsentEnabled()) {
+                // One INSERT ... ON CONFLICT (pid) DO NOTHING; only a conflicting pid costs a second read
+                if (secDbSessionRepository.insertIfAbsent(data)) {
+                    return data;
+                }
+                return secDbSessionRepository.findById(data.getPid()).orElse(null);
+            }
+
+            // Check if already exists (portable fallback for dialects without ON CONFLICT)
             if (data.getPid() != null && secDbSessionRepository.existsById(data.getPid())) {
                 return secDbSessionRepository.findById(data.getPid()).orElse(null);
             }
@@ -113,10 +193,145 @@ public class SecDbSessionService {
         SecDbSession existing = secDbSessionRepository.findById(data.getPid())
             .orElseThrow(() -> new NoResultException("SecDbSession with pid " + data.getPid() + " does not exist"));
 
+        applyUpdate(existing, data);
+
+        return secDbSessionRepository.save(existing);
+    }
+
+    /**
+     * Changes only the given attributes of the row identified by pid with a single UPDATE, without reading
+     * the row first.  Attribute names are the entity's field names.  An instance of the row already loaded
+     * in the current transaction is refreshed.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes) {
+        if (pid == null || pid.isNull()) {
+            throw new IllegalArgumentException("Cannot patch SecDbSession with null primary identifier (pid)");
+        }
+        if (changes == null || changes.isEmpty()) {
+            return 0;
+        }
+        int count = secDbSessionRepository.patch(pid, changes);
+        if (count == 0) {
+            throw new NoResultException("SecDbSession with pid " + pid + " does not exist");
+        }
+        return count;
+    }
+
+    /**
+     * Terminates a session with one narrow UPDATE of terminated_at and sess_term_info.
+     */
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public void terminate(CFLibDbKeyHash256 pid, LocalDateTime terminatedAt, String sessTerminationInfo) {
+        if (pid == null || pid.isNull()) {
+            throw new IllegalArgumentException("Cannot terminate SecDbSession with null primary identifier (pid)");
+        }
+        if (secDbSessionRepository.terminate(pid, terminatedAt != null ? terminatedAt : LocalDateTime.now(), sessTerminationInfo) == 0) {
+            throw new NoResultException("SecDbSession with pid " + pid + " does not exist");
+        }
+    }
+
+    /**
+     * Hands every SecDbSession to consumer in constant heap, for audits and exports.  Rows are read through a cursor
+     * of secdb.export.fetch-size rows in a dedicated read-only transaction; consumer receives detached instances
+     * whose secUser is fetched in the same statement and detached with them, so it can be read in full.
+     * Returns the number of rows exported.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true, transactionManager = "secTransactionManager")
+    public long exportAll(Consumer<SecDbSession> consumer) {
+        int fetchSize = SiloStreams.fetchSize(DbTest.getMergedProperties(), "secdb");
+        long count = 0L;
+        try (Stream<SecDbSession> rows = secDbSessionRepository.streamAll(fetchSize)) {
+            Iterator<SecDbSession> iter = rows.iterator();
+            while (iter.hasNext()) {
+                consumer.accept(iter.next());
+                count++;
+                if (count % fetchSize == 0L) {
+                    // Also drops the uninitialized association proxies the detached rows left behind
+                    secEntityManager.clear();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates the rows in JDBC batches of hibernate.jdbc.batch_size, one transaction per batch.
+     * Rows whose pid already exists are returned as stored, as create() does, but existence is probed
+     * once per batch rather than once per row.
+     * A pid repeated within a batch is created once and its later occurrences are returned as that row.
+     * The pids and timestamps stamped on the rows of a batch that rolls back are reverted.
+     */
+    public BatchResult<SecDbSession> createAll(Collection<SecDbSession> data) {
+        return SiloBatches.run(secTransactionManager, "SecDbSessionService.createAll", data, SiloBatches.batchSize(secJpaProperties), (batch, undo) -> {
+            LocalDateTime now = LocalDateTime.now();
+            for (SecDbSession row : batch) {
+                CFLibDbKeyHash256 pid = row.getPid();
+                LocalDateTime createdAt = row.getCreatedAt();
+                undo.record(() -> {
+                    row.setPid(pid);
+                    row.setCreatedAt(createdAt);
+                });
+                if (row.getPid() == null) {
+                    row.setPid(new CFLibDbKeyHash256(0));
+                }
+                row.setCreatedAt(now);
+            }
+            Map<CFLibDbKeyHash256, SecDbSession> existing = SiloBatches.indexBy(
+                secDbSessionRepository.findAllById(SiloBatches.keysOf(batch, SecDbSession::getPid)), SecDbSession::getPid);
+            List<SecDbSession> stored = new ArrayList<>(batch.size());
+            for (SecDbSession row : batch) {
+                SecDbSession found = existing.get(row.getPid());
+                if (found != null) {
+                    stored.add(found);
+                }
+                else {
+                    secEntityManager.persist(row);
+                    // A pid repeated later in the batch is returned as this row rather than persisted twice
+                    existing.put(row.getPid(), row);
+                    stored.add(row);
+                }
+            }
+            return stored;
+        });
+    }
+
+    /**
+     * Updates the rows in JDBC batches of hibernate.jdbc.batch_size, one transaction per batch.
+     * A missing pid fails its whole batch with a NoResultException.
+     */
+    public BatchResult<SecDbSession> updateAll(Collection<SecDbSession> data) {
+        return SiloBatches.run(secTransactionManager, "SecDbSessionService.updateAll", data, SiloBatches.batchSize(secJpaProperties), (batch) -> {
+            for (SecDbSession row : batch) {
+                if (row.getPid() == null || row.getPid().isNull()) {
+                    throw new IllegalArgumentException("Cannot update SecDbSession with null primary identifier (pid)");
+                }
+            }
+            Map<CFLibDbKeyHash256, SecDbSession> existing = SiloBatches.indexBy(
+                secDbSessionRepository.findAllById(SiloBatches.keysOf(batch, SecDbSession::getPid)), SecDbSession::getPid);
+            List<SecDbSession> stored = new ArrayList<>(batch.size());
+            for (SecDbSession row : batch) {
+                SecDbSession target = existing.get(row.getPid());
+                if (target == null) {
+                    throw new NoResultException("SecDbSession with pid " + row.getPid() + " does not exist");
+                }
+                applyUpdate(target, row);
+                stored.add(target);
+            }
+            return stored;
+        });
+    }
+
+    private boolean isInsertIfAbsentEnabled() {
+        if (insertIfAbsentEnabled == null) {
+            insertIfAbsentEnabled = SiloNativeSql.isInsertIfAbsentEnabled(DbTest.getMergedProperties(), "secdb");
+        }
+        return insertIfAbsentEnabled;
+    }
+
+    private void applyUpdate(SecDbSession existing, SecDbSession data) {
         // Update fields (except pid, createdAt)
         existing.setSessTerminationInfo(data.getSessTerminationInfo());
         existing.setTerminatedAt(data.getTerminatedAt());
-
-        return secDbSessionRepository.save(existing);
     }
 }
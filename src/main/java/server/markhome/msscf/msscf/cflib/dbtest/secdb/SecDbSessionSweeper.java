@@ -0,0 +1,211 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Terminates sessions that were never terminated and are older than secdb.session.sweeper.max-age-ms.
+ * Each sweep selects up to chunk-size stale pids and terminates them with one bulk UPDATE in its own short
+ * transaction on secTransactionManager, pausing pause-ms between chunks so row locks are held briefly.
+ * Sweeps run every interval-ms on a single daemon thread once the application is ready.
+ */
+@Component("SecDbSessionSweeper")
+public class SecDbSessionSweeper {
+
+    public static final long DEFAULT_INTERVAL_MS = 60000L;
+    public static final long DEFAULT_MAX_AGE_MS = 86400000L;
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    public static final long DEFAULT_PAUSE_MS = 50L;
+    public static final String DEFAULT_TERMINATION_INFO = "Expired by SecDbSessionSweeper";
+
+    @Autowired
+    private SecDbSessionRepository secDbSessionRepository;
+
+    @Autowired
+    @Qualifier("secTransactionManager")
+    private PlatformTransactionManager secTransactionManager;
+
+    private final AtomicReference<ScheduledExecutorService> refExecutor = new AtomicReference<>(null);
+
+    private long intervalMillis = DEFAULT_INTERVAL_MS;
+    private long maxAgeMillis = DEFAULT_MAX_AGE_MS;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private long pauseMillis = DEFAULT_PAUSE_MS;
+    private String terminationInfo = DEFAULT_TERMINATION_INFO;
+
+    private final LongAdder sweeps = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder rowsTerminated = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final AtomicLong lastSweepRows = new AtomicLong(0L);
+    private final AtomicLong lastSweepNanos = new AtomicLong(0L);
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        Properties merged = DbTest.getMergedProperties();
+        if (!Boolean.parseBoolean(merged.getProperty("secdb.session.sweeper.enabled", "false").trim())) {
+            return;
+        }
+        intervalMillis = Long.parseLong(merged.getProperty("secdb.session.sweeper.interval-ms", Long.toString(DEFAULT_INTERVAL_MS)).trim());
+        maxAgeMillis = Long.parseLong(merged.getProperty("secdb.session.sweeper.max-age-ms", Long.toString(DEFAULT_MAX_AGE_MS)).trim());
+        chunkSize = Integer.parseInt(merged.getProperty("secdb.session.sweeper.chunk-size", Integer.toString(DEFAULT_CHUNK_SIZE)).trim());
+        pauseMillis = Long.parseLong(merged.getProperty("secdb.session.sweeper.pause-ms", Long.toString(DEFAULT_PAUSE_MS)).trim());
+        terminationInfo = merged.getProperty("secdb.session.sweeper.termination-info", DEFAULT_TERMINATION_INFO);
+        if (intervalMillis <= 0L || chunkSize <= 0) {
+            throw new IllegalArgumentException("SecDbSessionSweeper requires a positive secdb.session.sweeper.interval-ms and chunk-size");
+        }
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "SecDbSessionSweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (refExecutor.compareAndSet(null, executor)) {
+            executor.scheduleWithFixedDelay(this::sweepQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+        else {
+            executor.shutdown();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ScheduledExecutorService executor = refExecutor.getAndSet(null);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs one sweep, chunk by chunk, until no stale sessions remain.  Returns the number of sessions terminated.
+     */
+    public long sweep() {
+        TransactionTemplate template = new TransactionTemplate(secTransactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        template.setName("SecDbSessionSweeper.sweep");
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime cutoff = now.minusNanos(TimeUnit.MILLISECONDS.toNanos(maxAgeMillis));
+        long started = System.nanoTime();
+        long swept = 0L;
+        while (true) {
+            long chunkStarted = System.nanoTime();
+            // Null once no stale session is left; a chunk shrunk by a concurrent terminate() does not end the sweep
+            Integer terminated = template.execute((status) -> {
+                List<CFLibDbKeyHash256> pids = secDbSessionRepository.findStalePids(cutoff, Limit.of(chunkSize));
+                if (pids.isEmpty()) {
+                    return null;
+                }
+                return secDbSessionRepository.terminateAll(pids, now, terminationInfo);
+            });
+            busyNanos.add(System.nanoTime() - chunkStarted);
+            if (terminated == null) {
+                break;
+            }
+            if (terminated > 0) {
+                chunks.increment();
+                rowsTerminated.add(terminated);
+                swept += terminated;
+            }
+            if (pauseMillis > 0L) {
+                try {
+                    Thread.sleep(pauseMillis);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - started;
+        sweeps.increment();
+        lastSweepRows.set(swept);
+        lastSweepNanos.set(elapsed);
+        if (swept > 0L) {
+            System.err.println("INFO: SecDbSessionSweeper terminated " + swept + " stale sessions in "
+                + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms (" + Math.round(rowsPerSecond(swept, elapsed)) + " rows/sec)");
+        }
+        return swept;
+    }
+
+    public long getSweeps() {
+        return sweeps.sum();
+    }
+
+    public long getChunks() {
+        return chunks.sum();
+    }
+
+    public long getRowsTerminated() {
+        return rowsTerminated.sum();
+    }
+
+    /**
+     * Rows terminated per second of the most recent sweep, including the pauses between chunks.
+     */
+    public double getLastSweepRowsPerSecond() {
+        return rowsPerSecond(lastSweepRows.get(), lastSweepNanos.get());
+    }
+
+    /**
+     * Rows terminated per second spent inside sweep transactions, over the life of the sweeper.
+     */
+    public double getRowsPerSecond() {
+        return rowsPerSecond(rowsTerminated.sum(), busyNanos.sum());
+    }
+
+    private void sweepQuietly() {
+        try {
+            sweep();
+        }
+        catch (RuntimeException e) {
+            System.err.println("ERROR: SecDbSessionSweeper.sweep() Caught " + e.getClass().getCanonicalName() + " - " + e.getMessage());
+        }
+    }
+
+    private static double rowsPerSecond(long rows, long nanos) {
+        return nanos > 0L ? rows * 1.0e9 / nanos : 0.0;
+    }
+}
@@ -25,18 +25,26 @@ import jakarta.transaction.Transactional;
 
 import org.hibernate.annotations.UpdateTimestamp;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 
 @Entity
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecDbUser.CACHE_REGION)
+@NamedQuery(name = "SecDbUser.findByUsername",
+    query = "select u from SecDbUser u where u.username = :username")
 @Table(
     name = "sec_user", schema = "secdb",
     indexes = {
         @Index(name = "sec_user_pidx", columnList = "pid", unique = true),
         @Index(name = "sec_user_axname", columnList = "username", unique = true),
-        @Index(name = "sec_user_dxemail", columnList = "email", unique = false),
-        @Index(name = "sec_user_dxmbrdptcd", columnList = "member_deptcode", unique = false),
+        @Index(name = "sec_user_dxemailpid", columnList = "email,pid", unique = false),
+        @Index(name = "sec_user_dxmbrdptcdpid", columnList = "member_deptcode,pid", unique = false),
     }
 )
 @Inheritance(strategy = InheritanceType.JOINED)
@@ -45,6 +53,8 @@ import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 @Transactional(Transactional.TxType.SUPPORTS)
 @PersistenceContext(unitName = "SecDbPU")
 public class SecDbUser implements Comparable<Object> {
+    /** Second-level cache region shared by the whole SecDbUser/SecDbManager hierarchy. */
+    public static final String CACHE_REGION = "user";
     public static final int USERNAME_SIZE = 64;
     public static final int EMAIL_SIZE = 1023;
 
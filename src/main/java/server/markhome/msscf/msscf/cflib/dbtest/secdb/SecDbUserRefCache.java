@@ -0,0 +1,194 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloConfig;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Remembers which SecDbUser pids are known to exist, so that the appdb services can validate a RefUID
+ * without opening a secdb transaction and loading the polymorphic user on every write.
+ * Only positive results are cached; entries expire after secdb.userref.cache.ttl-ms and the least recently
+ * used entries are evicted beyond secdb.userref.cache.max-entries (0 disables the cache).  Both limits are read
+ * from SiloConfig, so an edit to ~/.dbtest.properties takes effect once SiloConfigWatcher publishes it; a lower
+ * max-entries evicts the excess on the next lookup.
+ * Users are never deleted (SecDbUserService and SecDbManagerService have no delete path), so a cached pid stays
+ * valid until it expires; invalidate() is there for a delete path, and the calls made on update and patch do not
+ * change whether a pid exists.
+ * A lookup runs in a read-write secdb transaction so that, with a read replica configured, it reads the primary:
+ * a lagging replica could miss a user that exists, and the appdb services would reject a valid RefUID.
+ */
+@Component("SecDbUserRefCache")
+public class SecDbUserRefCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+    public static final long DEFAULT_TTL_MS = 300000L;
+
+    @Autowired
+    private SecDbUserRepository secDbUserRepository;
+
+    @Autowired
+    @Qualifier("secTransactionManager")
+    private PlatformTransactionManager secTransactionManager;
+
+    private final AtomicReference<Map<CFLibDbKeyHash256, Long>> validated = new AtomicReference<>();
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+    private volatile long ttlMillis = DEFAULT_TTL_MS;
+    // The SiloConfig version the limits were read from
+    private volatile long configVersion = 0L;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Whether pid references an existing SecDbUser (or SecDbManager).
+     */
+    public boolean exists(CFLibDbKeyHash256 pid) {
+        if (pid == null || pid.isNull()) {
+            return false;
+        }
+        Map<CFLibDbKeyHash256, Long> entries = getEntries();
+        readLimits(entries);
+        long now = System.currentTimeMillis();
+        if (maxEntries > 0) {
+            synchronized (entries) {
+                Long expiresAt = entries.get(pid);
+                if (expiresAt != null) {
+                    if (expiresAt.longValue() > now) {
+                        hits.increment();
+                        return true;
+                    }
+                    entries.remove(pid);
+                }
+            }
+        }
+        misses.increment();
+        // existsById() joins the read-write transaction, so SiloReplicaRouting keeps it on the primary;
+        // it never touches sec_mgr's columns
+        TransactionTemplate template = new TransactionTemplate(secTransactionManager);
+        template.setName("SecDbUserRefCache.exists");
+        Boolean exists = template.execute((status) -> secDbUserRepository.existsById(pid));
+        if (Boolean.TRUE.equals(exists) && maxEntries > 0) {
+            synchronized (entries) {
+                entries.put(pid, now + ttlMillis);
+            }
+        }
+        return Boolean.TRUE.equals(exists);
+    }
+
+    /**
+     * Drops pid so the next lookup goes back to the database.
+     */
+    public void invalidate(CFLibDbKeyHash256 pid) {
+        if (pid == null) {
+            return;
+        }
+        Map<CFLibDbKeyHash256, Long> entries = getEntries();
+        synchronized (entries) {
+            if (entries.remove(pid) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        Map<CFLibDbKeyHash256, Long> entries = getEntries();
+        synchronized (entries) {
+            invalidations.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public int getSize() {
+        Map<CFLibDbKeyHash256, Long> entries = getEntries();
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SecDbUserRefCache[size=" + getSize() + ", hits=" + getHits() + ", misses=" + getMisses()
+            + ", invalidations=" + getInvalidations() + "]";
+    }
+
+    private Map<CFLibDbKeyHash256, Long> getEntries() {
+        Map<CFLibDbKeyHash256, Long> entries = validated.get();
+        if (entries == null) {
+            validated.compareAndSet(null, new LinkedHashMap<CFLibDbKeyHash256, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CFLibDbKeyHash256, Long> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+            entries = validated.get();
+        }
+        return entries;
+    }
+
+    // Re-reads the limits whenever a new SiloConfig snapshot has been published
+    private void readLimits(Map<CFLibDbKeyHash256, Long> entries) {
+        SiloConfig config = SiloConfig.current();
+        if (config.getVersion() == configVersion) {
+            return;
+        }
+        synchronized (entries) {
+            if (config.getVersion() == configVersion) {
+                return;
+            }
+            maxEntries = Integer.parseInt(config.getProperty("secdb.userref.cache.max-entries",
+                Integer.toString(DEFAULT_MAX_ENTRIES)).trim());
+            ttlMillis = Long.parseLong(config.getProperty("secdb.userref.cache.ttl-ms",
+                Long.toString(DEFAULT_TTL_MS)).trim());
+            configVersion = config.getVersion();
+            // Least recently used first
+            Iterator<CFLibDbKeyHash256> eldest = entries.keySet().iterator();
+            while (entries.size() > Math.max(maxEntries, 0) && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+}
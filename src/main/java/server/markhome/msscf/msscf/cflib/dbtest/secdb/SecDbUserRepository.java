@@ -21,11 +21,31 @@
 package server.markhome.msscf.msscf.cflib.dbtest.secdb;
 
 import java.util.List;
+import java.util.Optional;
+
+import org.hibernate.jpa.HibernateHints;
 
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import jakarta.persistence.QueryHint;
 
-public interface SecDbUserRepository extends JpaRepository<SecDbUser, CFLibDbKeyHash256> {
+public interface SecDbUserRepository extends JpaRepository<SecDbUser, CFLibDbKeyHash256>, SecDbUserRepositoryCustom {
     List<SecDbUser> findByEmail(String email);
     List<SecDbUser> findByMemberDeptCode(String memberDeptCode);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    Optional<SecDbUser> findByUsername(@Param("username") String username);
+
+    // Keyset pages: rows whose pid sorts after the previous page's last pid, in pid order
+
+    @Query("select u from SecDbUser u where u.email = :email and u.pid.bytes > :after order by u.pid.bytes")
+    List<SecDbUser> findByEmailAfter(@Param("email") String email, @Param("after") byte[] after, Limit limit);
+
+    @Query("select u from SecDbUser u where u.memberDeptCode = :memberDeptCode and u.pid.bytes > :after order by u.pid.bytes")
+    List<SecDbUser> findByMemberDeptCodeAfter(@Param("memberDeptCode") String memberDeptCode, @Param("after") byte[] after, Limit limit);
 }
@@ -0,0 +1,40 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.util.Map;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public interface SecDbUserRepositoryCustom {
+    /**
+     * Inserts data with INSERT ... ON CONFLICT (pid) DO NOTHING in a single statement.
+     * Returns true when the row was inserted, false when a row with that pid already existed.
+     */
+    boolean insertIfAbsent(SecDbUser data);
+
+    /**
+     * Updates only the changed attributes of the row identified by pid, without reading it first; as a JOINED
+     * entity this is a multi-table mutation (see SiloPatches).
+     * Returns the number of rows updated.
+     */
+    int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes);
+}
@@ -0,0 +1,65 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.query.NativeQuery;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloPatches;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+public class SecDbUserRepositoryCustomImpl implements SecDbUserRepositoryCustom {
+
+    private static final String INSERT_IF_ABSENT =
+        "INSERT INTO {h-schema}sec_user (pid, user_type, username, email, member_deptcode, created_at, created_by, updated_at, updated_by) "
+        + "VALUES (:pid, 0, :username, :email, :memberDeptCode, :createdAt, :createdBy, :updatedAt, :updatedBy) "
+        + "ON CONFLICT (pid) DO NOTHING";
+
+    public static final Set<String> PATCHABLE = Set.of("username", "email", "memberDeptCode", "updatedBy");
+
+    @PersistenceContext(unitName = SecDbConfig.persistenceUnitName)
+    private EntityManager secEntityManager;
+
+    @Override
+    public boolean insertIfAbsent(SecDbUser data) {
+        NativeQuery<Object> query = SiloNativeSql.statement(secEntityManager, INSERT_IF_ABSENT, SecDbUser.class);
+        SiloNativeSql.bindKey(query, "pid", data.getPid());
+        SiloNativeSql.bindString(query, "username", data.getUsername());
+        SiloNativeSql.bindString(query, "email", data.getEmail());
+        SiloNativeSql.bindString(query, "memberDeptCode", data.getMemberDeptCode());
+        SiloNativeSql.bindTimestamp(query, "createdAt", data.getCreatedAt());
+        SiloNativeSql.bindKey(query, "createdBy", data.getCreatedBy());
+        SiloNativeSql.bindTimestamp(query, "updatedAt", data.getUpdatedAt());
+        SiloNativeSql.bindKey(query, "updatedBy", data.getUpdatedBy());
+        return query.executeUpdate() > 0;
+    }
+
+    @Override
+    public int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes) {
+        return SiloPatches.patch(secEntityManager, SecDbUser.class, pid, changes, PATCHABLE, true);
+    }
+}
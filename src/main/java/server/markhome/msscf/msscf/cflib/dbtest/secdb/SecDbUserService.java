@@ -22,19 +22,29 @@ package server.markhome.msscf.msscf.cflib.dbtest.secdb;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import server.markhome.msscf.msscf.cflib.dbtest.common.BatchResult;
+import server.markhome.msscf.msscf.cflib.dbtest.common.KeysetPage;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloBatches;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloNativeSql;
 import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.data.domain.Example;
-import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
+import jakarta.persistence.PersistenceContext;
 
 @Service("SecDbUserService")
 public class SecDbUserService {
@@ -46,29 +56,37 @@ public class SecDbUserService {
     @Autowired
     private SecDbUserRepository secDbUserRepository;
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Autowired
+    private SecDbUserRefCache secDbUserRefCache;
+
+    @PersistenceContext(unitName = SecDbConfig.persistenceUnitName)
+    private EntityManager secEntityManager;
+
+    @Autowired
+    @Qualifier("secTransactionManager")
+    private PlatformTransactionManager secTransactionManager;
+
+    @Autowired
+    @Qualifier("secJpaProperties")
+    private Properties secJpaProperties;
+
+    private volatile Boolean insertIfAbsentEnabled = null;
+
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public SecDbUser find(CFLibDbKeyHash256 pid) {
         return secDbUserRepository.findById(pid).orElse(null);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public SecDbUser findByName(String name) {
         if (name == null || name.isEmpty()) {
             return null;
         }
-        SecDbUser probe = new SecDbUser();
-        probe.setUsername(name);
-
-        ExampleMatcher matcher = ExampleMatcher.matching()
-            .withIgnoreNullValues()
-            .withMatcher("username", ExampleMatcher.GenericPropertyMatchers.exact());
-
-        Example<SecDbUser> example = Example.of(probe, matcher);
-
-        return secDbUserRepository.findOne(example).orElse(null);
+        // Served from the query cache and the user region once warm
+        return secDbUserRepository.findByUsername(name).orElse(null);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public List<SecDbUser> findByEmail(String email) {
         if (email == null || email.isEmpty()) {
             return new ArrayList<>();
@@ -76,7 +94,7 @@ public class SecDbUserService {
         return secDbUserRepository.findByEmail(email);
     }
 
-    @Transactional(propagation = Propagation.REQUIRED, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public List<SecDbUser> findByMemberDeptCode(String memberDeptCode) {
         if (memberDeptCode == null || memberDeptCode.isEmpty()) {
             return new ArrayList<>();
@@ -84,6 +102,39 @@ public class SecDbUserService {
         return secDbUserRepository.findByMemberDeptCode(memberDeptCode);
     }
 
+    /**
+     * One keyset page of the users with the given email, in pid order.
+     * Pass null as pageToken for the first page, then the previous page's getNextToken().
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public KeysetPage<SecDbUser> findByEmail(String email, String pageToken, int pageSize) {
+        KeysetPage.checkPageSize(pageSize);
+        if (email == null || email.isEmpty()) {
+            return new KeysetPage<>(new ArrayList<>(), null);
+        }
+        List<SecDbUser> fetched = secDbUserRepository.findByEmailAfter(email, KeysetPage.decodeToken(pageToken), Limit.of(pageSize + 1));
+        return KeysetPage.of(fetched, pageSize, SecDbUser::getPid);
+    }
+
+    /**
+     * One keyset page of the members of a department, in pid order.
+     * Pass null as pageToken for the first page, then the previous page's getNextToken().
+     */
+    @Transactional(propagation = Propagation.REQUIRED, readOnly = true, noRollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public KeysetPage<SecDbUser> findByMemberDeptCode(String memberDeptCode, String pageToken, int pageSize) {
+        KeysetPage.checkPageSize(pageSize);
+        if (memberDeptCode == null || memberDeptCode.isEmpty()) {
+            return new KeysetPage<>(new ArrayList<>(), null);
+        }
+        List<SecDbUser> fetched = secDbUserRepository.findByMemberDeptCodeAfter(memberDeptCode, KeysetPage.decodeToken(pageToken), Limit.of(pageSize + 1));
+        return KeysetPage.of(fetched, pageSize, SecDbUser::getPid);
+    }
+
+    /**
+     * Stores data unless a row with its pid already exists, in which case the stored row is returned instead.
+     * When create.insert-if-absent is in effect and data is a plain SecDbUser the new row is written by one native INSERT and data itself is
+     * returned, detached: later changes to it are not flushed, so pass it to update() to change the row.
+     */
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
     public SecDbUser create(SecDbUser data) {
         if (data == null) {
@@ -100,7 +151,16 @@ public class SecDbUserService {
             data.setCreatedAt(now);
             data.setUpdatedAt(now);
 
-            // Check if already exists
+            // Subclass instances such as SecDbManager span more tables, so they keep going through save()
+            if (isInsertIfAbsentEnabled() && data.getClass() == SecDbUser.class) {
+                // One INSERT ... ON CONFLICT (pid) DO NOTHING; only a conflicting pid costs a second read
+                if (secDbUserRepository.insertIfAbsent(data)) {
+                    return data;
+                }
+                return secDbUserRepository.findById(data.getPid()).orElse(null);
+            }
+
+            // Check if already exists (portable fallback for dialects without ON CONFLICT)
             if (data.getPid() != null && secDbUserRepository.existsById(data.getPid())) {
                 return secDbUserRepository.findById(data.getPid()).orElse(null);
             }
@@ -131,13 +191,118 @@ public class SecDbUserService {
         SecDbUser existing = secDbUserRepository.findById(data.getPid())
             .orElseThrow(() -> new NoResultException("SecDbUser with pid " + data.getPid() + " does not exist"));
 
+        applyUpdate(existing, data, LocalDateTime.now());
+        secDbUserRefCache.invalidate(existing.getPid());
+
+        return secDbUserRepository.save(existing);
+    }
+
+    /**
+     * Changes only the given attributes of the row identified by pid with a bulk UPDATE, without reading
+     * the row first, updatedAt is stamped as update() does.  Attribute names are the entity's field names.
+     * An instance of the row already loaded in the current transaction is refreshed (see SiloPatches).
+     */
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = NoResultException.class, transactionManager = "secTransactionManager")
+    public int patch(CFLibDbKeyHash256 pid, Map<String, Object> changes) {
+        if (pid == null || pid.isNull()) {
+            throw new IllegalArgumentException("Cannot patch SecDbUser with null primary identifier (pid)");
+        }
+        if (changes == null || changes.isEmpty()) {
+            return 0;
+        }
+        int count = secDbUserRepository.patch(pid, changes);
+        if (count == 0) {
+            throw new NoResultException("SecDbUser with pid " + pid + " does not exist");
+        }
+        secDbUserRefCache.invalidate(pid);
+        return count;
+    }
+
+    /**
+     * Creates the rows in JDBC batches of hibernate.jdbc.batch_size, one transaction per batch.
+     * Rows whose pid already exists are returned as stored, as create() does, but existence is probed
+     * once per batch rather than once per row.
+     * A pid repeated within a batch is created once and its later occurrences are returned as that row.
+     * The pids and timestamps stamped on the rows of a batch that rolls back are reverted.
+     */
+    public BatchResult<SecDbUser> createAll(Collection<SecDbUser> data) {
+        return SiloBatches.run(secTransactionManager, "SecDbUserService.createAll", data, SiloBatches.batchSize(secJpaProperties), (batch, undo) -> {
+            LocalDateTime now = LocalDateTime.now();
+            for (SecDbUser row : batch) {
+                CFLibDbKeyHash256 pid = row.getPid();
+                LocalDateTime createdAt = row.getCreatedAt();
+                LocalDateTime updatedAt = row.getUpdatedAt();
+                undo.record(() -> {
+                    row.setPid(pid);
+                    row.setCreatedAt(createdAt);
+                    row.setUpdatedAt(updatedAt);
+                });
+                if (row.getPid() == null) {
+                    row.setPid(new CFLibDbKeyHash256(0));
+                }
+                row.setCreatedAt(now);
+                row.setUpdatedAt(now);
+            }
+            Map<CFLibDbKeyHash256, SecDbUser> existing = SiloBatches.indexBy(
+                secDbUserRepository.findAllById(SiloBatches.keysOf(batch, SecDbUser::getPid)), SecDbUser::getPid);
+            List<SecDbUser> stored = new ArrayList<>(batch.size());
+            for (SecDbUser row : batch) {
+                SecDbUser found = existing.get(row.getPid());
+                if (found != null) {
+                    stored.add(found);
+                }
+                else {
+                    secEntityManager.persist(row);
+                    // A pid repeated later in the batch is returned as this row rather than persisted twice
+                    existing.put(row.getPid(), row);
+                    stored.add(row);
+                }
+            }
+            return stored;
+        });
+    }
+
+    /**
+     * Updates the rows in JDBC batches of hibernate.jdbc.batch_size, one transaction per batch.
+     * A missing pid fails its whole batch with a NoResultException.
+     */
+    public BatchResult<SecDbUser> updateAll(Collection<SecDbUser> data) {
+        return SiloBatches.run(secTransactionManager, "SecDbUserService.updateAll", data, SiloBatches.batchSize(secJpaProperties), (batch) -> {
+            for (SecDbUser row : batch) {
+                if (row.getPid() == null || row.getPid().isNull()) {
+                    throw new IllegalArgumentException("Cannot update SecDbUser with null primary identifier (pid)");
+                }
+            }
+            LocalDateTime now = LocalDateTime.now();
+            Map<CFLibDbKeyHash256, SecDbUser> existing = SiloBatches.indexBy(
+                secDbUserRepository.findAllById(SiloBatches.keysOf(batch, SecDbUser::getPid)), SecDbUser::getPid);
+            List<SecDbUser> stored = new ArrayList<>(batch.size());
+            for (SecDbUser row : batch) {
+                SecDbUser target = existing.get(row.getPid());
+                if (target == null) {
+                    throw new NoResultException("SecDbUser with pid " + row.getPid() + " does not exist");
+                }
+                applyUpdate(target, row, now);
+                secDbUserRefCache.invalidate(target.getPid());
+                stored.add(target);
+            }
+            return stored;
+        });
+    }
+
+    private boolean isInsertIfAbsentEnabled() {
+        if (insertIfAbsentEnabled == null) {
+            insertIfAbsentEnabled = SiloNativeSql.isInsertIfAbsentEnabled(DbTest.getMergedProperties(), "secdb");
+        }
+        return insertIfAbsentEnabled;
+    }
+
+    private void applyUpdate(SecDbUser existing, SecDbUser data, LocalDateTime now) {
         // Update fields (except pid, createdAt)
         existing.setUsername(data.getUsername());
         existing.setEmail(data.getEmail());
         existing.setMemberDeptCode(data.getMemberDeptCode());
         // ... update other fields as needed ...
-        existing.setUpdatedAt(LocalDateTime.now());
-
-        return secDbUserRepository.save(existing);
+        existing.setUpdatedAt(now);
     }
 }
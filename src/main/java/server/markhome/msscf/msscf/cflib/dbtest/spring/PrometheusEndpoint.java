@@ -0,0 +1,112 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.spring;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloConfig;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloMetrics;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Serves every meter in the Prometheus text format at http://127.0.0.1:<metrics.prometheus.port>/metrics for a
+ * local scraper.  It binds to the loopback address only, and metrics.prometheus.port=0 turns it off; when the port
+ * is taken it logs a warning and the application starts without it.  Its threads are daemons, so it does not keep
+ * the JVM running on its own.
+ */
+@Component("PrometheusEndpoint")
+public class PrometheusEndpoint {
+
+    public static final String PORT_KEY = "metrics.prometheus.port";
+    public static final int DEFAULT_PORT = 9464;
+    public static final String PATH = "/metrics";
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    @PostConstruct
+    public void start() throws InterruptedException {
+        String port = SiloConfig.current().getProperty(PORT_KEY, Integer.toString(DEFAULT_PORT)).trim();
+        int portNumber;
+        try {
+            portNumber = Integer.parseInt(port);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(PORT_KEY + " must be a port number, not \"" + port + "\"", e);
+        }
+        if (portNumber == 0) {
+            System.err.println("PrometheusEndpoint disabled by " + PORT_KEY);
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), portNumber), 0);
+        }
+        catch (IOException e) {
+            // Typically another process, or a second DbTest, already holds the port; the meters are still recorded
+            System.err.println("WARNING: PrometheusEndpoint cannot listen on 127.0.0.1:" + portNumber + " - " + e.getMessage()
+                + "; metrics will not be served, set " + PORT_KEY + " to a free port or 0");
+            server = null;
+            return;
+        }
+        handlers = Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("prometheus-endpoint").factory());
+        server.setExecutor(handlers);
+        server.createContext(PATH, this::scrape);
+        // The dispatcher thread inherits daemon status from the thread that starts the server
+        Thread.ofPlatform().daemon().start(server::start).join();
+        System.err.println("PrometheusEndpoint serving http://127.0.0.1:" + portNumber + PATH);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            handlers.shutdownNow();
+        }
+    }
+
+    private void scrape(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = SiloMetrics.prometheus().scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.spring;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import server.markhome.msscf.msscf.cflib.dbtest.common.BatchResult;
+import server.markhome.msscf.msscf.cflib.dbtest.common.KeysetPage;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloMetrics;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every public method of the secdb and appdb @Service classes, as the outermost advice so the time includes
+ * the transaction's commit.  Records
+ * - dbtest.service.calls, a latency histogram with p50, p95 and p99, tagged service, method and outcome;
+ * - dbtest.service.errors, counted by exception type;
+ * - dbtest.service.result.size, the number of entities returned by methods returning a collection, a
+ *   KeysetPage or a BatchResult.
+ */
+@Aspect
+@Component("ServiceMetricsAspect")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServiceMetricsAspect {
+
+    public static final String CALLS = "dbtest.service.calls";
+    public static final String ERRORS = "dbtest.service.errors";
+    public static final String RESULT_SIZE = "dbtest.service.result.size";
+
+    private final Map<Method, Timer> successes = new ConcurrentHashMap<>();
+    private final Map<Method, Timer> failures = new ConcurrentHashMap<>();
+    private final Map<Method, DistributionSummary> resultSizes = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errors = new ConcurrentHashMap<>();
+
+    @Around("execution(public * *(..)) && @within(org.springframework.stereotype.Service)"
+        + " && (within(server.markhome.msscf.msscf.cflib.dbtest.secdb..*) || within(server.markhome.msscf.msscf.cflib.dbtest.appdb..*))")
+    public Object measure(ProceedingJoinPoint call) throws Throwable {
+        Method method = ((MethodSignature)call.getSignature()).getMethod();
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = call.proceed();
+        }
+        catch (Throwable e) {
+            long elapsed = System.nanoTime() - start;
+            failures.computeIfAbsent(method, (key) -> timer(key, "error")).record(elapsed, TimeUnit.NANOSECONDS);
+            String exception = e.getClass().getSimpleName();
+            errors.computeIfAbsent(method.getDeclaringClass().getSimpleName() + '.' + method.getName() + '/' + exception,
+                (key) -> Counter.builder(ERRORS)
+                    .description("Service method calls that threw, by exception type")
+                    .tags("service", method.getDeclaringClass().getSimpleName(), "method", method.getName(), "exception", exception)
+                    .register(SiloMetrics.registry()))
+                .increment();
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        successes.computeIfAbsent(method, (key) -> timer(key, "success")).record(elapsed, TimeUnit.NANOSECONDS);
+        int size = resultSize(result);
+        if (size >= 0) {
+            resultSizes.computeIfAbsent(method, (key) -> DistributionSummary.builder(RESULT_SIZE)
+                .description("Entities returned per call")
+                .tags("service", key.getDeclaringClass().getSimpleName(), "method", key.getName())
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(10000.0)
+                .register(SiloMetrics.registry()))
+                .record(size);
+        }
+        return result;
+    }
+
+    private static Timer timer(Method method, String outcome) {
+        return Timer.builder(CALLS)
+            .description("Service method latency")
+            .tags("service", method.getDeclaringClass().getSimpleName(), "method", method.getName(), "outcome", outcome)
+            .publishPercentiles(0.5, 0.95, 0.99)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofNanos(100000L))
+            .maximumExpectedValue(Duration.ofMinutes(2L))
+            .register(SiloMetrics.registry());
+    }
+
+    // -1 for results that are not collections of entities
+    private static int resultSize(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size();
+        }
+        if (result instanceof KeysetPage<?> page) {
+            return page.size();
+        }
+        if (result instanceof BatchResult<?> batch) {
+            return batch.getStored().size();
+        }
+        return -1;
+    }
+}
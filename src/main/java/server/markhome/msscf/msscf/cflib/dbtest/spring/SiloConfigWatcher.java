@@ -0,0 +1,226 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.spring;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloConfig;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloRegistry;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Watches ~/.dbtest.properties and, when it changes, publishes a new SiloConfig snapshot and applies the settings
+ * that can change without a restart: each running pool's size, leak-detection threshold and timeouts (through its
+ * HikariConfigMXBean), each transaction manager's default timeout, which also bounds statement execution, and
+ * the secdb.userref.cache.* limits, which SecDbUserRefCache re-reads from the new snapshot.
+ * Other changed settings are reported as needing a restart.  A silo whose beans have not been created yet (a lazy
+ * silo nothing has used) simply picks up the new snapshot when it is created.
+ *
+ * config.reload.enabled=false turns the watcher off; config.reload.debounce-ms is how long it waits for an editor
+ * to finish writing before re-reading the file.
+ */
+@Component("SiloConfigWatcher")
+public class SiloConfigWatcher {
+
+    public static final String ENABLED_KEY = "config.reload.enabled";
+    public static final String DEBOUNCE_KEY = "config.reload.debounce-ms";
+    public static final long DEFAULT_DEBOUNCE_MS = 250L;
+
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+
+    private WatchService watchService;
+    private Thread watcher;
+
+    @PostConstruct
+    public void start() {
+        SiloConfig config = SiloConfig.current();
+        if (!Boolean.parseBoolean(config.getProperty(ENABLED_KEY, "true").trim())) {
+            System.err.println("SiloConfigWatcher disabled by " + ENABLED_KEY);
+            return;
+        }
+        long debounceMs = Long.parseLong(config.getProperty(DEBOUNCE_KEY, Long.toString(DEFAULT_DEBOUNCE_MS)).trim());
+        if (debounceMs < 0L) {
+            throw new IllegalArgumentException(DEBOUNCE_KEY + " must not be negative");
+        }
+        File userFile = DbTest.getUserPropertiesFile();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            // Editors often save by writing a new file and renaming it over the old one, which shows up as a create
+            userFile.getAbsoluteFile().getParentFile().toPath().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("SiloConfigWatcher cannot watch " + userFile.getAbsolutePath() + " - " + e.getMessage(), e);
+        }
+        watcher = Thread.ofPlatform().daemon().name("dbtest-config-watcher").start(() -> watch(userFile.getName(), debounceMs));
+        System.err.println("SiloConfigWatcher watching " + userFile.getAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            }
+            catch (IOException e) {
+                System.err.println("SiloConfigWatcher could not close its WatchService - " + e.getMessage());
+            }
+            watcher.interrupt();
+        }
+    }
+
+    private void watch(String fileName, long debounceMs) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = touches(key, fileName);
+                if (changed) {
+                    // Swallow the burst of events a single save produces
+                    Thread.sleep(debounceMs);
+                    WatchKey more;
+                    while ((more = watchService.poll()) != null) {
+                        touches(more, fileName);
+                    }
+                    reload();
+                }
+            }
+        }
+        catch (ClosedWatchServiceException | InterruptedException e) {
+            // stop() was called
+        }
+    }
+
+    private static boolean touches(WatchKey key, String fileName) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path path && path.getFileName().toString().equals(fileName)) {
+                touched = true;
+            }
+        }
+        key.reset();
+        return touched;
+    }
+
+    /**
+     * Publishes a new SiloConfig and applies its hot-changeable settings.  Invalid settings are reported and the
+     * previous snapshot stays in effect.
+     */
+    public void reload() {
+        SiloConfig previous = SiloConfig.current();
+        SiloConfig next;
+        try {
+            next = SiloConfig.reload();
+        }
+        catch (RuntimeException e) {
+            System.err.println("ERROR: SiloConfigWatcher kept the previous settings because the changed properties are invalid - " + e.getMessage());
+            return;
+        }
+        if (next == previous) {
+            return;
+        }
+        System.err.println("SiloConfigWatcher published settings version " + next.getVersion());
+        for (SiloSettings settings : next.getSilos()) {
+            SiloSettings before;
+            try {
+                before = previous.silo(settings.getName());
+            }
+            catch (IllegalArgumentException e) {
+                System.err.println("SiloConfigWatcher: silo " + settings.getName() + " is new and will only be created by a restart");
+                continue;
+            }
+            apply(before, settings);
+        }
+    }
+
+    private void apply(SiloSettings before, SiloSettings after) {
+        applyPool(after, SiloRegistry.DATA_SOURCE, before.changedPoolSettings(after),
+            after.getMaximumPoolSize(), after.getMinimumIdle());
+        if (before.hasReplica() && after.hasReplica()) {
+            applyPool(after, SiloRegistry.REPLICA_DATA_SOURCE, before.changedReplicaPoolSettings(after),
+                after.getReplicaMaximumPoolSize(), after.getReplicaMinimumIdle());
+        }
+        else if (before.hasReplica() != after.hasReplica()) {
+            System.err.println("SiloConfigWatcher: " + after.getName() + "." + SiloSettings.REPLICA_URL_KEY + " only changes with a restart");
+        }
+
+        String transactionManagerName = after.getDefinition().beanName(SiloRegistry.TRANSACTION_MANAGER);
+        if (before.getTransactionTimeoutSeconds() != after.getTransactionTimeoutSeconds()
+            && beanFactory.containsSingleton(transactionManagerName)
+            && beanFactory.getSingleton(transactionManagerName) instanceof AbstractPlatformTransactionManager transactionManager)
+        {
+            transactionManager.setDefaultTimeout(after.getTransactionTimeoutSeconds());
+            System.err.println("SiloConfigWatcher set " + transactionManagerName + " default timeout to " + after.getTransactionTimeoutSeconds() + " s");
+        }
+    }
+
+    private void applyPool(SiloSettings after, String suffix, Set<String> changed, int maximumPoolSize, int minimumIdle) {
+        String dataSourceName = after.getDefinition().beanName(suffix);
+        Set<String> restart = new TreeSet<>(changed);
+        restart.removeAll(SiloSettings.HOT_POOL_SETTINGS);
+        if (!restart.isEmpty()) {
+            System.err.println("SiloConfigWatcher: " + dataSourceName + " settings " + restart + " only change with a restart");
+        }
+        changed.retainAll(SiloSettings.HOT_POOL_SETTINGS);
+
+        if (!changed.isEmpty() && beanFactory.containsSingleton(dataSourceName)
+            && beanFactory.getSingleton(dataSourceName) instanceof HikariDataSource dataSource)
+        {
+            HikariConfigMXBean pool = dataSource.getHikariConfigMXBean();
+            // Keep minimumIdle within maximumPoolSize at every step
+            if (maximumPoolSize >= pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(maximumPoolSize);
+                pool.setMinimumIdle(minimumIdle);
+            }
+            else {
+                pool.setMinimumIdle(minimumIdle);
+                pool.setMaximumPoolSize(maximumPoolSize);
+            }
+            pool.setLeakDetectionThreshold(after.getLeakDetectionThresholdMs());
+            pool.setConnectionTimeout(after.getConnectionTimeoutMs());
+            pool.setValidationTimeout(after.getValidationTimeoutMs());
+            pool.setIdleTimeout(after.getIdleTimeoutMs());
+            pool.setMaxLifetime(after.getMaxLifetimeMs());
+            System.err.println("SiloConfigWatcher applied " + changed + " to " + dataSourceName);
+        }
+    }
+}
@@ -20,14 +20,35 @@
  */
 package server.markhome.msscf.msscf.cflib.dbtest.spring;
 
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloConfig;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloMetrics;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloRegistry;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloSettings;
+import server.markhome.msscf.msscf.cflib.dbtest.common.SiloStatistics;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbManagerClosureCheck;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 @Component
 public class StartupListener {
 
+    public static final int WARMUP_VALIDATION_SECONDS = 5;
+    /** Set by the fast-startup profile's CDS training and timing runs so the JVM exits once the tests are done. */
+    public static final String EXIT_AFTER_READY_KEY = "startup.exit-after-ready";
+
     @Autowired
     // @Qualifier("TestSecDb")
     private TestSecDb testSecDb;
@@ -36,39 +57,65 @@ public class StartupListener {
     // @Qualifier("TestAppDb")
     private TestAppDb testAppDb;
 
+    @Autowired
+    private StartupTaskRunner startupTaskRunner;
+
+    @Autowired
+    private SecDbManagerClosureCheck secDbManagerClosureCheck;
+
     @EventListener
     public void onApplicationReady(ApplicationReadyEvent event) {
-
-        System.err.println("Executing testSecDb.performTests()");
-        try {
-            String response = testSecDb.performTests(null);
-            if (response != null) {
-                System.err.println("TestSecDb.performTests() responded: " + response);
-            }
-            else {
-                System.err.println("TestSecDb.performTests() did not return a response");
+        ApplicationContext context = event.getApplicationContext();
+        List<StartupTaskRunner.StartupTask> tasks = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        // Only the eager silos' primary pools; a lazy silo's pool waits for its first use, and replica pools for
+        // their SiloReplicaRouting monitor
+        for (SiloSettings settings : SiloConfig.current().getSilos()) {
+            if (settings.getDefinition().isLazy()) {
+                continue;
             }
+            String bean = settings.getDefinition().beanName(SiloRegistry.DATA_SOURCE);
+            DataSource dataSource = context.getBean(bean, DataSource.class);
+            tasks.add(new StartupTaskRunner.StartupTask(bean + ".warmup", () -> warmUp(dataSource)));
+            names.add(bean + ".warmup");
         }
-        catch (Throwable th) {
-            System.err.println("testSecDb.performTests() threw " + th.getClass().getCanonicalName() + " - " + th.getMessage());
-            th.printStackTrace(System.err);
+        tasks.add(new StartupTaskRunner.StartupTask("TestSecDb", () -> testSecDb.performTests(null), present(names, "secDataSource.warmup")));
+        names.add("TestSecDb");
+        if (secDbManagerClosureCheck.isEnabled()) {
+            tasks.add(new StartupTaskRunner.StartupTask("SecDbManagerClosureCheck", secDbManagerClosureCheck::check, present(names, "secDataSource.warmup")));
         }
+        // The sample address references the manager TestSecDb creates
+        tasks.add(new StartupTaskRunner.StartupTask("TestAppDb", () -> testAppDb.performTests(null), present(names, "appDataSource.warmup", "TestSecDb")));
 
-        System.err.println("Executing testAppDb.performTests()");
-        try {
-            String response = testAppDb.performTests(null);
-            if (response != null) {
-                System.err.println("TestAppDb.performTests() responded: " + response);
-            }
-            else {
-                System.err.println("TestAppDb.performTests() did not return a response");
-            }
+        startupTaskRunner.runAll(tasks);
+
+        System.err.println("DbTest StartupListener tests complete.");
+        SiloMetrics.report("DbTest silo transaction and connection timings:");
+        SiloStatistics.report("DbTest Hibernate statistics by persistence unit:");
+
+        if (Boolean.parseBoolean(DbTest.getMergedProperties().getProperty(EXIT_AFTER_READY_KEY, "false").trim())) {
+            System.err.println("DbTest StartupListener exiting because " + EXIT_AFTER_READY_KEY + " is set");
+            System.exit(SpringApplication.exit(event.getApplicationContext()));
         }
-        catch (Throwable th) {
-            System.err.println("testAppDb.performTests() threw " + th.getClass().getCanonicalName() + " - " + th.getMessage());
-            th.printStackTrace(System.err);
+    }
+
+    // The dependencies that are scheduled; a lazy silo has no warm-up task to wait for
+    private static String[] present(Set<String> names, String... dependsOn) {
+        List<String> present = new ArrayList<>();
+        for (String dep : dependsOn) {
+            if (names.contains(dep)) {
+                present.add(dep);
+            }
         }
+        return present.toArray(new String[0]);
+    }
 
-        System.err.println("DbTest StartupListener tests complete.");
+    private static String warmUp(DataSource dataSource) throws Exception {
+        try (Connection conn = dataSource.getConnection()) {
+            if (!conn.isValid(WARMUP_VALIDATION_SECONDS)) {
+                throw new IllegalStateException("Connection failed validation");
+            }
+            return "Connection validated";
+        }
     }
 }
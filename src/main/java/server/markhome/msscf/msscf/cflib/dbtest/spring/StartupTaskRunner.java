@@ -0,0 +1,204 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.spring;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import server.markhome.msscf.msscf.cflib.dbtest.DbTest;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs startup checks and warm-ups on virtual threads, each as soon as the tasks it depends on have succeeded,
+ * so independent silos pay their database round trips concurrently rather than one after another.
+ * Every task's duration is reported; a task whose dependency failed is skipped, and the whole run fails with
+ * an IllegalStateException once startup.tasks.timeout-ms elapses.
+ */
+@Component("StartupTaskRunner")
+public class StartupTaskRunner {
+
+    public static final long DEFAULT_TIMEOUT_MS = 60000L;
+
+    public static final class StartupTask {
+        private final String name;
+        private final Callable<String> work;
+        private final List<String> dependsOn;
+
+        public StartupTask(String name, Callable<String> work, String... dependsOn) {
+            if (name == null || name.isEmpty()) {
+                throw new IllegalArgumentException("StartupTask name is required");
+            }
+            if (work == null) {
+                throw new IllegalArgumentException("StartupTask " + name + " has no work");
+            }
+            this.name = name;
+            this.work = work;
+            this.dependsOn = Arrays.asList(dependsOn);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Callable<String> getWork() {
+            return work;
+        }
+
+        public List<String> getDependsOn() {
+            return dependsOn;
+        }
+    }
+
+    /**
+     * Runs tasks and waits for all of them, returning each task's response (null when it failed or was skipped)
+     * keyed by task name in the order given.
+     */
+    public Map<String, String> runAll(Collection<StartupTask> tasks) {
+        Map<String, StartupTask> byName = new LinkedHashMap<>();
+        for (StartupTask task : tasks) {
+            if (byName.put(task.getName(), task) != null) {
+                throw new IllegalArgumentException("StartupTaskRunner.runAll() task " + task.getName() + " is listed twice");
+            }
+        }
+        for (StartupTask task : byName.values()) {
+            for (String dep : task.getDependsOn()) {
+                if (!byName.containsKey(dep)) {
+                    throw new IllegalArgumentException("StartupTaskRunner.runAll() task " + task.getName() + " depends on unknown task " + dep);
+                }
+            }
+        }
+
+        long timeoutMs = getTimeoutMs();
+        Map<String, CompletableFuture<String>> futures = new LinkedHashMap<>();
+        Map<String, Long> elapsedMs = new ConcurrentHashMap<>();
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (StartupTask task : byName.values()) {
+                schedule(task, byName, futures, elapsedMs, executor, new HashSet<>());
+            }
+            try {
+                CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).get(timeoutMs, TimeUnit.MILLISECONDS);
+            }
+            catch (ExecutionException e) {
+                // Reported per task below
+            }
+            catch (TimeoutException e) {
+                List<String> pending = new ArrayList<>();
+                futures.forEach((name, future) -> {
+                    if (!future.isDone()) {
+                        pending.add(name);
+                    }
+                });
+                throw new IllegalStateException("StartupTaskRunner timed out after " + timeoutMs + " ms still waiting for " + pending);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("StartupTaskRunner was interrupted waiting for its tasks");
+            }
+        }
+        finally {
+            // Interrupts any task still running after a timeout
+            executor.shutdownNow();
+        }
+
+        Map<String, String> responses = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<String>> entry : futures.entrySet()) {
+            String name = entry.getKey();
+            Long ms = elapsedMs.get(name);
+            try {
+                String response = entry.getValue().join();
+                responses.put(name, response);
+                System.err.println("StartupTaskRunner " + name + " completed in " + ms + " ms"
+                    + (response != null ? ": " + response : " without a response"));
+            }
+            catch (CompletionException e) {
+                responses.put(name, null);
+                if (ms == null) {
+                    System.err.println("StartupTaskRunner " + name + " skipped because a task it depends on failed");
+                }
+                else {
+                    Throwable th = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("StartupTaskRunner " + name + " failed after " + ms + " ms, threw "
+                        + th.getClass().getCanonicalName() + " - " + th.getMessage());
+                    th.printStackTrace(System.err);
+                }
+            }
+        }
+        System.err.println("StartupTaskRunner ran " + futures.size() + " tasks in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return responses;
+    }
+
+    private CompletableFuture<String> schedule(StartupTask task, Map<String, StartupTask> byName,
+        Map<String, CompletableFuture<String>> futures, Map<String, Long> elapsedMs, ExecutorService executor, Set<String> visiting)
+    {
+        CompletableFuture<String> future = futures.get(task.getName());
+        if (future != null) {
+            return future;
+        }
+        if (!visiting.add(task.getName())) {
+            throw new IllegalArgumentException("StartupTaskRunner.runAll() dependency cycle through task " + task.getName());
+        }
+        List<CompletableFuture<String>> deps = new ArrayList<>();
+        for (String dep : task.getDependsOn()) {
+            deps.add(schedule(byName.get(dep), byName, futures, elapsedMs, executor, visiting));
+        }
+        visiting.remove(task.getName());
+        future = CompletableFuture.allOf(deps.toArray(new CompletableFuture<?>[0])).thenApplyAsync((ignored) -> {
+            long taskStart = System.nanoTime();
+            try {
+                return task.getWork().call();
+            }
+            catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            finally {
+                elapsedMs.put(task.getName(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - taskStart));
+            }
+        }, executor);
+        futures.put(task.getName(), future);
+        return future;
+    }
+
+    private static long getTimeoutMs() {
+        long timeoutMs = Long.parseLong(DbTest.getMergedProperties().getProperty("startup.tasks.timeout-ms", Long.toString(DEFAULT_TIMEOUT_MS)).trim());
+        if (timeoutMs <= 0) {
+            throw new IllegalArgumentException("startup.tasks.timeout-ms must be positive");
+        }
+        return timeoutMs;
+    }
+}
@@ -93,30 +93,25 @@ public class TestSecDb {
                 String msg = "INFO: Sample SecDbUser 'admin' 0123456789abcdef updated, update stamp is " + user.getUpdatedAt().toString();
                 responseMessage.append(msg);
             }
-            List<SecDbSession> managerSessions = secDbSessionService.findByUser(manager);
-            if (managerSessions == null || managerSessions.isEmpty()) {
-                SecDbSession sess = new SecDbSession(mgrpid, manager, "System initialization", now, null, null);
-                sess = secDbSessionService.create(sess);
-                String msg = "INFO Priming SecDbSession " + sess.getPid().toString() + " for system initialization created";
-                responseMessage.append(msg);
+            // Only the active sessions are read, however many terminated sessions the manager has accumulated
+            List<SecDbSession> activeSessions = secDbSessionService.findActiveByUser(manager);
+            if (!activeSessions.isEmpty()) {
+                for (SecDbSession sess : activeSessions) {
+                    secDbSessionService.terminate(sess.getPid(), now, "First rerun auto-terminates the initialization session");
+                    String msg = "INFO Terminated last run SecDbSession " + sess.getPid().toString() + " from system initialization";
+                    responseMessage.append(msg);
+                }
             }
             else {
-                if (managerSessions.size() == 1) {
-                    SecDbSession sess = managerSessions.get(0);
-                    if (sess.getTerminatedAt() == null) {
-                        sess.setTerminatedAt(now);
-                        sess.setSessTerminationInfo("First rerun auto-terminates the initialization session");
-                        sess = secDbSessionService.update(sess);
-                        String msg = "INFO Terminated last run SecDbSession " + sess.getPid().toString() + " from system initialization";
-                        responseMessage.append(msg);
-                    }
-                    else {
-                        String msg = "INFO SecDbSession " + sess.getPid().toString() + " from system initialization was terminated at " + sess.getTerminatedAt();
-                        responseMessage.append(msg);
-                    }
+                SecDbSession sess = secDbSessionService.find(mgrpid);
+                if (sess == null) {
+                    sess = new SecDbSession(mgrpid, manager, "System initialization", now, null, null);
+                    sess = secDbSessionService.create(sess);
+                    String msg = "INFO Priming SecDbSession " + sess.getPid().toString() + " for system initialization created";
+                    responseMessage.append(msg);
                 }
                 else {
-                    String msg = "INFO Multiple SecDbSession instances indicate initialization happened some time ago.";
+                    String msg = "INFO SecDbSession " + sess.getPid().toString() + " from system initialization was terminated at " + sess.getTerminatedAt();
                     responseMessage.append(msg);
                 }
             }
@@ -0,0 +1,23 @@
+-- appdb tables as mapped by AppDbAddress.
+-- IF NOT EXISTS lets databases created by hbm2ddl.auto=update adopt the migrations unchanged.
+CREATE SCHEMA IF NOT EXISTS appdb;
+
+CREATE TABLE IF NOT EXISTS appdb.app_addr (
+    pid bytea NOT NULL,
+    refuid bytea NOT NULL,
+    addrname varchar(24) NOT NULL,
+    addrcontact varchar(64),
+    addrapt varchar(16),
+    addrstreet varchar(64),
+    addrstreet2 varchar(64),
+    addrcity varchar(64),
+    addrprovince varchar(32),
+    addrcountry varchar(32),
+    addrpostalcode varchar(16),
+    created_at timestamp(6) NOT NULL,
+    created_by bytea NOT NULL,
+    updated_at timestamp(6) NOT NULL,
+    updated_by bytea NOT NULL,
+    CONSTRAINT app_addr_pk PRIMARY KEY (pid),
+    CONSTRAINT app_addr_addrname_uk UNIQUE (addrname)
+);
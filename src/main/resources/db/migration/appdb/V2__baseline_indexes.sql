@@ -0,0 +1,4 @@
+-- The @Index declarations of AppDbAddress, built without blocking writes where the database allows it.
+CREATE UNIQUE INDEX ${concurrently} IF NOT EXISTS app_addr_pidx ON appdb.app_addr (pid);
+CREATE UNIQUE INDEX ${concurrently} IF NOT EXISTS app_addr_axname ON appdb.app_addr (refuid, addrname);
+CREATE INDEX ${concurrently} IF NOT EXISTS app_addr_dxrefuidpid ON appdb.app_addr (refuid, pid);
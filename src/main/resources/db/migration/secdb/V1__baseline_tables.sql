@@ -0,0 +1,46 @@
+-- secdb tables as mapped by SecDbUser, SecDbManager, SecDbSession and SecDbManagerClosure.
+-- IF NOT EXISTS lets databases created by hbm2ddl.auto=update adopt the migrations unchanged.
+CREATE SCHEMA IF NOT EXISTS secdb;
+
+CREATE TABLE IF NOT EXISTS secdb.sec_user (
+    pid bytea NOT NULL,
+    user_type integer NOT NULL,
+    username varchar(64) NOT NULL,
+    email varchar(1023) NOT NULL,
+    member_deptcode varchar(32),
+    created_at timestamp(6) NOT NULL,
+    created_by bytea NOT NULL,
+    updated_at timestamp(6) NOT NULL,
+    updated_by bytea NOT NULL,
+    CONSTRAINT sec_user_pk PRIMARY KEY (pid),
+    CONSTRAINT sec_user_username_uk UNIQUE (username)
+);
+
+CREATE TABLE IF NOT EXISTS secdb.sec_mgr (
+    pid bytea NOT NULL,
+    title varchar(64) NOT NULL,
+    deptcode varchar(32) NOT NULL,
+    subdeptof bytea,
+    CONSTRAINT sec_mgr_pk PRIMARY KEY (pid),
+    CONSTRAINT sec_mgr_deptcode_uk UNIQUE (deptcode),
+    CONSTRAINT sec_mgr_user_fk FOREIGN KEY (pid) REFERENCES secdb.sec_user (pid),
+    CONSTRAINT sec_mgr_subdeptof_fk FOREIGN KEY (subdeptof) REFERENCES secdb.sec_mgr (pid)
+);
+
+CREATE TABLE IF NOT EXISTS secdb.sec_sess (
+    pid bytea NOT NULL,
+    secuser_pid bytea NOT NULL,
+    sess_cr_info varchar(1024) NOT NULL,
+    created_at timestamp(6) NOT NULL,
+    sess_term_info varchar(1024),
+    terminated_at timestamp(6),
+    CONSTRAINT sec_sess_pk PRIMARY KEY (pid),
+    CONSTRAINT sec_sess_user_fk FOREIGN KEY (secuser_pid) REFERENCES secdb.sec_user (pid)
+);
+
+CREATE TABLE IF NOT EXISTS secdb.sec_mgr_closure (
+    ancestor_pid bytea NOT NULL,
+    descendant_pid bytea NOT NULL,
+    depth integer NOT NULL,
+    CONSTRAINT sec_mgr_closure_pk PRIMARY KEY (ancestor_pid, descendant_pid)
+);
@@ -0,0 +1,4 @@
+-- dialect: postgresql
+-- Active-session lookups and SecDbSessionSweeper's stale-session scan read only the sessions never terminated.
+CREATE INDEX ${concurrently} IF NOT EXISTS sec_sess_dxactive ON secdb.sec_sess (secuser_pid) WHERE terminated_at IS NULL;
+CREATE INDEX ${concurrently} IF NOT EXISTS sec_sess_dxstale ON secdb.sec_sess (created_at) WHERE terminated_at IS NULL;
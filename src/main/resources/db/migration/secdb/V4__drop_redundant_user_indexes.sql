@@ -0,0 +1,4 @@
+-- sec_user_dxemailpid and sec_user_dxmbrdptcdpid lead with the same columns and serve the same lookups,
+-- so the single-column indexes only cost a write on every insert and update.
+DROP INDEX ${concurrently} IF EXISTS secdb.sec_user_dxemail;
+DROP INDEX ${concurrently} IF EXISTS secdb.sec_user_dxmbrdptcd;
@@ -0,0 +1,11 @@
+-- Fills sec_mgr_closure from the managers' subdeptof links, replacing any rows it already holds, so managers stored
+-- before the closure table existed answer isAncestorOf and descendantsOf.  Paths stop at depth 64, the default
+-- secdb.manager.hierarchy.max-depth; SecDbManagerService keeps the table current from here on.
+DELETE FROM secdb.sec_mgr_closure;
+INSERT INTO secdb.sec_mgr_closure (ancestor_pid, descendant_pid, depth)
+WITH RECURSIVE paths (ancestor_pid, descendant_pid, depth) AS (
+    SELECT m.pid, m.pid, 0 FROM secdb.sec_mgr m
+    UNION ALL
+    SELECT p.ancestor_pid, c.pid, p.depth + 1 FROM paths p JOIN secdb.sec_mgr c ON c.subdeptof = p.descendant_pid
+    WHERE p.depth < 64)
+SELECT ancestor_pid, descendant_pid, depth FROM paths;
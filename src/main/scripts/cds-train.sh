@@ -0,0 +1,91 @@
+#!/usr/bin/env bash
+#
+#	MSS Code Factory CFLib DbTest
+#
+#	Copyright (c) 2025 Mark Stephen Sobkow
+#
+#	This file is part of MSS Code Factory 3.0.
+#
+#	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+#	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+#
+#	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+#	but WITHOUT ANY WARRANTY; without even the implied warranty of
+#	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+#
+#	You should have received a copy of the Apache v2.0 License along with
+#	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+#
+#	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+#  customization.
+#
+# Run by the fast-startup Maven profile: cds-train.sh <repackaged jar> <output directory> [training home]
+#
+# Extracts the jar (CDS cannot archive classes loaded from nested jars), records dbtest.jsa from a training run
+# with the AOT initializers enabled, then times a plain start and an AOT + CDS start.  Every run sets
+# startup.exit-after-ready so DbTest exits once ApplicationReadyEvent's startup tasks finish.  The runs execute
+# the startup tests, which write rows; given a training home, they read its .dbtest.properties rather than the
+# user's, so they can be pointed at a throwaway database.  They pass secdb.session.sweeper.enabled=false,
+# which the .dbtest.properties they read can still override.
+set -euo pipefail
+
+JAR="$1"
+OUT="$2"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+ARCHIVE="$OUT/dbtest.jsa"
+TRAINING_HOME="${3:-}"
+RUN_OPTS=(-Dstartup.exit-after-ready=true -Dsecdb.session.sweeper.enabled=false)
+if [ -n "$TRAINING_HOME" ]; then
+    if [ ! -f "$TRAINING_HOME/.dbtest.properties" ]; then
+        echo "[fast-startup] $TRAINING_HOME/.dbtest.properties does not exist" >&2
+        exit 1
+    fi
+    RUN_OPTS+=(-Duser.home="$TRAINING_HOME")
+fi
+
+rm -rf "$OUT"
+"$JAVA" -Djarmode=tools -jar "$JAR" extract --destination "$OUT"
+APP="$OUT/$(basename "$JAR")"
+
+# run <label> [jvm options...] prints the run's wall time in milliseconds; its output goes to <label>.log
+run() {
+    local label="$1"
+    shift
+    local start end
+    start=$(date +%s%N)
+    if ! "$JAVA" "$@" "${RUN_OPTS[@]}" -jar "$APP" > "$OUT/$label.log" 2>&1; then
+        echo "[fast-startup] $label run failed, see $OUT/$label.log" >&2
+        exit 1
+    fi
+    end=$(date +%s%N)
+    echo $(( (end - start) / 1000000 ))
+}
+
+# Spring Boot's own "Started DbTest in N seconds" figure, which excludes the startup tasks and shutdown
+started() {
+    grep -o 'Started DbTest in [0-9.]* seconds' "$OUT/$1.log" | grep -o '[0-9.]*' | head -n 1 || true
+}
+
+echo "[fast-startup] Recording $ARCHIVE"
+run training -XX:ArchiveClassesAtExit="$ARCHIVE" -Dspring.aot.enabled=true > /dev/null
+if [ ! -f "$ARCHIVE" ]; then
+    echo "[fast-startup] The training run did not write $ARCHIVE, see $OUT/training.log" >&2
+    exit 1
+fi
+
+echo "[fast-startup] Timing startup"
+BASELINE_MS=$(run baseline)
+FAST_MS=$(run fast -XX:SharedArchiveFile="$ARCHIVE" -Dspring.aot.enabled=true)
+
+cp "$(dirname "$0")/dbtest-fast.sh" "$OUT/dbtest-fast.sh"
+chmod +x "$OUT/dbtest-fast.sh"
+
+echo "[fast-startup] ------------------------------------------------------------"
+echo "[fast-startup] Startup comparison (process start to exit after ApplicationReadyEvent)"
+echo "[fast-startup]   plain jar:      ${BASELINE_MS} ms (Spring reported $(started baseline) s)"
+echo "[fast-startup]   AOT + CDS:      ${FAST_MS} ms (Spring reported $(started fast) s)"
+if [ "$BASELINE_MS" -gt 0 ]; then
+    echo "[fast-startup]   saved:          $(( BASELINE_MS - FAST_MS )) ms ($(( (BASELINE_MS - FAST_MS) * 100 / BASELINE_MS ))%)"
+fi
+echo "[fast-startup] Launch with $OUT/dbtest-fast.sh"
+echo "[fast-startup] ------------------------------------------------------------"
@@ -0,0 +1,36 @@
+#!/usr/bin/env bash
+#
+#	MSS Code Factory CFLib DbTest
+#
+#	Copyright (c) 2025 Mark Stephen Sobkow
+#
+#	This file is part of MSS Code Factory 3.0.
+#
+#	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+#	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+#
+#	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+#	but WITHOUT ANY WARRANTY; without even the implied warranty of
+#	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+#
+#	You should have received a copy of the Apache v2.0 License along with
+#	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+#
+#	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+#  customization.
+#
+# Starts DbTest from the directory mvn -Pfast-startup package extracted it to, using the AOT-generated
+# initializers and the dbtest.jsa class-data-sharing archive.  JAVA_OPTS and any arguments are passed through.
+# The archive is only valid for the JDK that recorded it; with another JDK the JVM warns and starts without it.
+set -euo pipefail
+
+DIR="$(cd "$(dirname "$0")" && pwd)"
+JAVA="${JAVA_HOME:+$JAVA_HOME/bin/}java"
+JAR="$(ls "$DIR"/*.jar | head -n 1)"
+
+OPTS=(-Dspring.aot.enabled=true)
+if [ -f "$DIR/dbtest.jsa" ]; then
+    OPTS+=(-XX:SharedArchiveFile="$DIR/dbtest.jsa")
+fi
+
+exec "$JAVA" "${OPTS[@]}" ${JAVA_OPTS:-} -jar "$JAR" "$@"
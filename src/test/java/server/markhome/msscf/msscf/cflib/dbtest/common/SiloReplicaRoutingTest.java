@@ -0,0 +1,277 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Field;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUser;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserRefCache;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserRepository;
+import server.markhome.msscf.msscf.cflib.dbtest.secdb.SecDbUserRepositoryCustomImpl;
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+/**
+ * Routes SecDbPU's read-only find* transactions through SiloReplicaRouting between two in-memory H2 databases,
+ * one standing in for the primary and one for its replica.  The replica's lag query reads a row the test sets, so
+ * it can make the replica fall behind; a user written to the primary only shows which database served a read,
+ * and SecDbUserRefCache must still find it.
+ * The tests run in order, the last one closing the replica's pool.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class SiloReplicaRoutingTest {
+
+    private static final String PRIMARY_URL = "jdbc:h2:mem:replicarouting_primary;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_URL = "jdbc:h2:mem:replicarouting_replica;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final long MAX_LAG_MS = 1000L;
+    private static final long READ_YOUR_WRITES_MS = 500L;
+    private static final long CHECK_INTERVAL_MS = 50L;
+    private static final long WAIT_MS = 5000L;
+    private static final String USERNAME = "routinguser";
+
+    private static HikariDataSource primary;
+    private static HikariDataSource replica;
+    private static SiloReplicaRouting routing;
+    private static LocalContainerEntityManagerFactoryBean emfBean;
+    private static SecDbUserRepository repository;
+    private static TransactionTemplate readOnly;
+    private static TransactionTemplate readWrite;
+    private static SecDbUserRefCache refCache;
+    private static CFLibDbKeyHash256 userPid;
+
+    @BeforeAll
+    public static void startSilo() throws ReflectiveOperationException, SQLException {
+        Properties merged = new Properties();
+        merged.setProperty("secdb.jakarta.persistence.jdbc.driver", "org.h2.Driver");
+        merged.setProperty("secdb.jakarta.persistence.jdbc.url", PRIMARY_URL);
+        merged.setProperty("secdb.jakarta.persistence.jdbc.user", "sa");
+        merged.setProperty("secdb.jakarta.persistence.jdbc.password", "sa");
+        merged.setProperty("secdb.hikari.maximum-pool-size", "4");
+        merged.setProperty("secdb.hikari.minimum-idle", "1");
+        merged.setProperty("secdb." + SiloSettings.REPLICA_URL_KEY, REPLICA_URL);
+        merged.setProperty("secdb.replica.lag-query", "SELECT lag_ms FROM replica_lag");
+        merged.setProperty("secdb.replica.max-lag-ms", Long.toString(MAX_LAG_MS));
+        merged.setProperty("secdb.replica.read-your-writes-ms", Long.toString(READ_YOUR_WRITES_MS));
+        merged.setProperty("secdb.replica.check-interval-ms", Long.toString(CHECK_INTERVAL_MS));
+        SiloDefinition silo = new SiloDefinition("secdb", SecDbUser.class.getPackageName(), "SecDbPU", "sec", "secdb", true, false, List.of());
+        SiloSettings settings = SiloSettings.from(merged, silo);
+
+        primary = new HikariDataSource(settings.newHikariConfig());
+        replica = new HikariDataSource(settings.newReplicaHikariConfig());
+        // The replica gets the same tables, but none of the rows written through the silo
+        closeFactory(entityManagerFactory(replica, "create"));
+        try (Connection conn = replica.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE replica_lag (lag_ms BIGINT NOT NULL)");
+            stmt.executeUpdate("INSERT INTO replica_lag VALUES (0)");
+            conn.commit();
+        }
+
+        routing = new SiloReplicaRouting(settings, primary, replica);
+        emfBean = entityManagerFactory(routing, "create-drop");
+        EntityManagerFactory emf = emfBean.getObject();
+        EntityManager em = SharedEntityManagerCreator.createSharedEntityManager(emf);
+        repository = new JpaRepositoryFactory(em)
+            .getRepository(SecDbUserRepository.class, RepositoryFragments.just(new SecDbUserRepositoryCustomImpl()));
+        JpaTransactionManager transactionManager = new JpaTransactionManager(emf);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        readWrite.executeWithoutResult(status -> {
+            SecDbUser user = new SecDbUser(new CFLibDbKeyHash256(0), USERNAME, USERNAME + "@test.local");
+            user.setCreatedBy(new CFLibDbKeyHash256(0));
+            user.setUpdatedBy(new CFLibDbKeyHash256(0));
+            em.persist(user);
+            userPid = user.getPid();
+        });
+        refCache = new SecDbUserRefCache();
+        inject(refCache, "secDbUserRepository", repository);
+        inject(refCache, "secTransactionManager", transactionManager);
+        waitFor("the replica to be checked", routing::isReplicaUsable);
+    }
+
+    @AfterAll
+    public static void stopSilo() {
+        closeFactory(emfBean);
+        if (routing != null) {
+            routing.close();
+        }
+        if (replica != null) {
+            replica.close();
+        }
+        if (primary != null) {
+            primary.close();
+        }
+    }
+
+    @Test
+    @Order(1)
+    public void findUsesTheReplica() throws InterruptedException {
+        // Outlast the read-your-writes window of the seeding transaction
+        Thread.sleep(READ_YOUR_WRITES_MS + 100L);
+        long replicaReads = routing.getReplicaReads();
+        assertFalse(findUser(), "the replica has no rows written through the silo");
+        assertEquals(replicaReads + 1L, routing.getReplicaReads(), "replica reads");
+    }
+
+    @Test
+    @Order(2)
+    public void refCheckUsesThePrimary() throws InterruptedException {
+        Thread.sleep(READ_YOUR_WRITES_MS + 100L);
+        long replicaReads = routing.getReplicaReads();
+        assertTrue(refCache.exists(userPid), "a user the replica lacks still passes the referential check");
+        assertEquals(replicaReads, routing.getReplicaReads(), "replica reads by the referential check");
+    }
+
+    @Test
+    @Order(3)
+    public void findAfterCommitUsesThePrimary() throws InterruptedException {
+        readWrite.executeWithoutResult(status -> {
+            SecDbUser user = repository.findByUsername(USERNAME).orElseThrow();
+            user.setEmail(USERNAME + "@changed.local");
+        });
+        long replicaReads = routing.getReplicaReads();
+        long primaryReads = routing.getPrimaryReads();
+        assertTrue(findUser(), "a thread that just committed reads its write back from the primary");
+        assertEquals(replicaReads, routing.getReplicaReads(), "replica reads inside the read-your-writes window");
+        assertEquals(primaryReads + 1L, routing.getPrimaryReads(), "primary reads inside the read-your-writes window");
+
+        Thread.sleep(READ_YOUR_WRITES_MS + 100L);
+        assertFalse(findUser(), "reads return to the replica once the window has passed");
+        assertEquals(replicaReads + 1L, routing.getReplicaReads(), "replica reads after the read-your-writes window");
+    }
+
+    @Test
+    @Order(4)
+    public void findWhileTheReplicaLagsUsesThePrimary() throws SQLException {
+        setReplicaLag(MAX_LAG_MS * 5L);
+        waitFor("the lagging replica to be bypassed", () -> !routing.isReplicaUsable());
+        long primaryReads = routing.getPrimaryReads();
+        assertTrue(findUser(), "a lagging replica is bypassed");
+        assertEquals(primaryReads + 1L, routing.getPrimaryReads(), "primary reads while the replica lags");
+
+        setReplicaLag(0L);
+        waitFor("the replica to catch up", routing::isReplicaUsable);
+        long replicaReads = routing.getReplicaReads();
+        assertFalse(findUser(), "reads return to the replica once it has caught up");
+        assertEquals(replicaReads + 1L, routing.getReplicaReads(), "replica reads after catching up");
+    }
+
+    @Test
+    @Order(5)
+    public void findWithoutTheReplicaUsesThePrimary() {
+        replica.close();
+        long primaryReads = routing.getPrimaryReads();
+        // Whether or not the monitor has noticed yet, the read must not fail
+        assertTrue(findUser(), "an unreachable replica is bypassed");
+        assertEquals(primaryReads + 1L, routing.getPrimaryReads(), "primary reads without the replica");
+        waitFor("the unreachable replica to be bypassed", () -> !routing.isReplicaUsable());
+        assertEquals(-1L, routing.getReplicaLagMs(), "lag of an unreachable replica");
+    }
+
+    // A read-only transaction around a find* call, as the services' find* methods run
+    private static boolean findUser() {
+        return readOnly.execute(status -> repository.findByUsername(USERNAME).isPresent());
+    }
+
+    private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static void setReplicaLag(long lagMs) throws SQLException {
+        try (Connection conn = replica.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE replica_lag SET lag_ms = " + lagMs);
+            conn.commit();
+        }
+    }
+
+    private static void waitFor(String what, BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out after " + WAIT_MS + " ms waiting for " + what);
+            }
+            try {
+                Thread.sleep(CHECK_INTERVAL_MS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError("Interrupted waiting for " + what, e);
+            }
+        }
+    }
+
+    private static LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource, String hbm2ddl) {
+        Properties jpaProperties = new Properties();
+        jpaProperties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        jpaProperties.setProperty("hibernate.hbm2ddl.auto", hbm2ddl);
+        jpaProperties.setProperty("jakarta.persistence.create-database-schemas", "true");
+        jpaProperties.setProperty("jakarta.persistence.sharedCache.mode", "NONE");
+        jpaProperties.setProperty("hibernate.cache.use_second_level_cache", "false");
+        jpaProperties.setProperty("hibernate.session.events.log", "false");
+
+        LocalContainerEntityManagerFactoryBean bean = new LocalContainerEntityManagerFactoryBean();
+        bean.setDataSource(dataSource);
+        bean.setPackagesToScan(SecDbUser.class.getPackageName());
+        bean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        bean.setJpaProperties(jpaProperties);
+        bean.afterPropertiesSet();
+        return bean;
+    }
+
+    private static void closeFactory(LocalContainerEntityManagerFactoryBean bean) {
+        if (bean != null) {
+            bean.destroy();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ *	MSS Code Factory CFLib DbTest
+ *
+ *	Copyright (c) 2025 Mark Stephen Sobkow
+ *
+ *	This file is part of MSS Code Factory 3.0.
+ *
+ *	MSS Code Factory 3.0 is free software: you can redistribute it and/or modify
+ *	it under the terms of the Apache v2.0 License as published by the Apache Foundation.
+ *
+ *	MSS Code Factory 3.0 is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *	You should have received a copy of the Apache v2.0 License along with
+ *	MSS Code Factory.  If not, see https://www.apache.org/licenses/LICENSE-2.0
+ *
+ *	Contact Mark Stephen Sobkow at mark.sobkow@gmail.com for commercial licensing or
+ *  customization.
+ */
+package server.markhome.msscf.msscf.cflib.dbtest.secdb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+
+import server.markhome.msscf.msscf.cflib.dbutil.CFLibDbKeyHash256;
+
+/**
+ * Counts the statements behind a 1000-session listing that touches every session's user, against SecDbPU built
+ * on an in-memory H2 database with the silo's default_batch_fetch_size and the second-level cache off, so every
+ * load reaches the database.  The fetch-join and entity-graph queries must load the users in the listing's own
+ * statement; the plain listing leaves the users to batch fetching.
+ */
+public class SecDbSessionFetchTest {
+
+    private static final int USERS = 100;
+    private static final int MANAGERS = 10;
+    private static final int SESSIONS = 1000;
+    private static final int BATCH_FETCH_SIZE = 32;
+
+    private static LocalContainerEntityManagerFactoryBean emfBean;
+    private static EntityManagerFactory emf;
+    private static Statistics statistics;
+    private static CFLibDbKeyHash256 busiestUserPid;
+
+    private EntityManager em;
+    private SecDbSessionRepository repository;
+
+    @BeforeAll
+    public static void createSessions() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:secdbsessionfetch;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1", "sa", "sa");
+        dataSource.setDriverClassName("org.h2.Driver");
+        Properties jpaProperties = new Properties();
+        jpaProperties.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        jpaProperties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
+        jpaProperties.setProperty("jakarta.persistence.create-database-schemas", "true");
+        jpaProperties.setProperty("jakarta.persistence.sharedCache.mode", "NONE");
+        jpaProperties.setProperty("hibernate.cache.use_second_level_cache", "false");
+        jpaProperties.setProperty("hibernate.default_batch_fetch_size", Integer.toString(BATCH_FETCH_SIZE));
+        jpaProperties.setProperty("hibernate.jdbc.batch_size", "50");
+        jpaProperties.setProperty("hibernate.order_inserts", "true");
+        jpaProperties.setProperty("hibernate.generate_statistics", "true");
+        jpaProperties.setProperty("hibernate.session.events.log", "false");
+
+        emfBean = new LocalContainerEntityManagerFactoryBean();
+        emfBean.setDataSource(dataSource);
+        emfBean.setPackagesToScan(SecDbSession.class.getPackageName());
+        emfBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        emfBean.setJpaProperties(jpaProperties);
+        emfBean.afterPropertiesSet();
+        emf = emfBean.getObject();
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        EntityManager seed = emf.createEntityManager();
+        seed.getTransaction().begin();
+        LocalDateTime now = LocalDateTime.now();
+        CFLibDbKeyHash256 creator = new CFLibDbKeyHash256(0);
+        List<SecDbUser> users = new ArrayList<>(USERS);
+        for (int i = 0; i < USERS; i++) {
+            SecDbUser user;
+            if (i < MANAGERS) {
+                user = new SecDbManager(new CFLibDbKeyHash256(0), "fetchmgr" + i, "fetchmgr" + i + "@test.local", "Manager " + i, "FETCH" + i);
+            }
+            else {
+                user = new SecDbUser(new CFLibDbKeyHash256(0), "fetchuser" + i, "fetchuser" + i + "@test.local");
+            }
+            user.setCreatedBy(creator);
+            user.setUpdatedBy(creator);
+            seed.persist(user);
+            users.add(user);
+        }
+        for (int i = 0; i < SESSIONS; i++) {
+            // Every tenth session belongs to the first user, the rest are spread over all of them
+            SecDbUser user = users.get(i % 10 == 0 ? 0 : i % USERS);
+            seed.persist(new SecDbSession(new CFLibDbKeyHash256(0), user, "Fetch test session " + i, now.minusSeconds(SESSIONS - i)));
+        }
+        seed.getTransaction().commit();
+        seed.close();
+        busiestUserPid = users.get(0).getPid();
+    }
+
+    @AfterAll
+    public static void closeFactory() {
+        if (emfBean != null) {
+            emfBean.destroy();
+        }
+    }
+
+    @BeforeEach
+    public void openEntityManager() {
+        // A fresh, empty persistence context per test
+        em = emf.createEntityManager();
+        repository = new JpaRepositoryFactory(em).getRepository(SecDbSessionRepository.class,
+            RepositoryFragments.just(new SecDbSessionRepositoryCustomImpl()));
+        statistics.clear();
+    }
+
+    @AfterEach
+    public void closeEntityManager() {
+        em.close();
+    }
+
+    @Test
+    public void entityGraphListingIsOneStatement() {
+        List<SecDbSession> sessions = repository.findActiveWithUsers(Limit.of(SESSIONS));
+        assertEquals(SESSIONS, touchUsers(sessions));
+        assertEquals(1L, statistics.getPrepareStatementCount(), "findActiveWithUsers() statements");
+    }
+
+    @Test
+    public void fetchJoinListingIsOneStatement() {
+        List<SecDbSession> sessions = repository.findByUserWithUser(busiestUserPid);
+        assertTrue(touchUsers(sessions) > 1);
+        assertEquals(1L, statistics.getPrepareStatementCount(), "findByUserWithUser() statements");
+    }
+
+    @Test
+    public void lazyListingBatchFetchesUsers() {
+        List<SecDbSession> sessions = repository.findAll();
+        assertEquals(SESSIONS, touchUsers(sessions));
+        long expected = 1L + (USERS + BATCH_FETCH_SIZE - 1) / BATCH_FETCH_SIZE;
+        long statements = statistics.getPrepareStatementCount();
+        assertTrue(statements <= expected, "findAll() took " + statements + " statements, expected at most " + expected);
+    }
+
+    private static int touchUsers(List<SecDbSession> sessions) {
+        int touched = 0;
+        for (SecDbSession session : sessions) {
+            if (session.getSecUser().getUsername() != null) {
+                touched++;
+            }
+        }
+        return touched;
+    }
+}